@@ -0,0 +1,251 @@
+package com.example;
+
+import com.example.api.ExampleApi;
+import com.example.flow.ExampleFlow;
+import com.example.state.IOUState;
+import com.google.common.collect.ImmutableSet;
+import net.corda.core.concurrent.CordaFuture;
+import net.corda.core.identity.CordaX500Name;
+import net.corda.core.identity.Party;
+import net.corda.core.messaging.CordaRPCOps;
+import net.corda.core.messaging.DataFeed;
+import net.corda.core.node.services.Vault;
+import net.corda.core.node.services.VaultService;
+import net.corda.core.node.services.vault.PageSpecification;
+import net.corda.core.node.services.vault.QueryCriteria;
+import net.corda.core.node.services.vault.Sort;
+import net.corda.core.transactions.SignedTransaction;
+import net.corda.testing.core.TestIdentity;
+import net.corda.testing.driver.DriverParameters;
+import net.corda.testing.driver.InProcess;
+import net.corda.testing.driver.NodeHandle;
+import net.corda.testing.driver.NodeParameters;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import rx.Subscription;
+
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static net.corda.core.node.services.vault.QueryCriteriaUtils.DEFAULT_PAGE_NUM;
+import static net.corda.testing.driver.Driver.driver;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * A long-running companion to [DriverBasedTests] that holds two nodes under steady IOU flow and query load and
+ * watches for leaks.
+ *
+ * Each second the test starts ExampleFlows at a fixed rate and calls several read endpoints through an in-process
+ * [ExampleApi]. At most [MAX_IN_FLIGHT_SECONDS] seconds' worth of flows are left running: beyond that the test waits
+ * for the oldest, and every flow must complete by the end of the run. It also behaves like a web client that tracks
+ * the vault for a while: it opens a vaultTrack feed and closes the one opened [OPEN_FEEDS] seconds earlier, so a fixed
+ * number of feeds should be open at any time.
+ *
+ * At every sample interval it records, for this JVM (which also hosts the nodes), the heap used after a GC and the
+ * live thread count. After the run, a least-squares slope is fitted to each series, leaving out the first fifth of the
+ * run as warm-up. The test fails if any slope exceeds its limit.
+ *
+ * The node does not expose how many vaultTrack feeds it is serving, so, where it can, the test also counts the
+ * subscribers to the node's vault updates by reflecting on the vault service's internals. Every feed the node serves
+ * ends up there, so feeds the node fails to release when the client closes them show as growth. The count is
+ * optional: if the internals have changed, a warning is logged and only the heap and thread limits are checked.
+ *
+ * Skipped unless example.benchmark.soakMinutes is set, e.g.
+ *   ./gradlew integrationTest -Dexample.benchmark.soakMinutes=240
+ * Optional settings: example.benchmark.soakFlowsPerSecond (default 2), example.benchmark.soakSampleSeconds
+ * (default 30), example.benchmark.soakMaxHeapGrowthMbPerHour (default 64) and
+ * example.benchmark.soakMaxThreadGrowthPerHour (default 10).
+ */
+public class DriverBasedSoakTests {
+    private static final Logger logger = LoggerFactory.getLogger(DriverBasedSoakTests.class);
+    private static final int OPEN_FEEDS = 10;
+    private static final int MAX_IN_FLIGHT_SECONDS = 30;
+
+    private final TestIdentity bankA = new TestIdentity(new CordaX500Name("BankA", "", "GB"));
+    private final TestIdentity bankB = new TestIdentity(new CordaX500Name("BankB", "", "US"));
+
+    private static class Sample {
+        final double hours;
+        final double heapMb;
+        final double threads;
+        final double vaultSubscribers;
+
+        Sample(double hours, double heapMb, double threads, double vaultSubscribers) {
+            this.hours = hours;
+            this.heapMb = heapMb;
+            this.threads = threads;
+            this.vaultSubscribers = vaultSubscribers;
+        }
+    }
+
+    @Test
+    public void soakTest() {
+        final Integer minutes = Integer.getInteger("example.benchmark.soakMinutes");
+        assumeTrue("Set example.benchmark.soakMinutes to run the soak test", minutes != null);
+        final int flowsPerSecond = Integer.getInteger("example.benchmark.soakFlowsPerSecond", 2);
+        final int sampleSeconds = Integer.getInteger("example.benchmark.soakSampleSeconds", 30);
+        final double maxHeapGrowth = Double.parseDouble(System.getProperty("example.benchmark.soakMaxHeapGrowthMbPerHour", "64"));
+        final double maxThreadGrowth = Double.parseDouble(System.getProperty("example.benchmark.soakMaxThreadGrowthPerHour", "10"));
+
+        driver(new DriverParameters().withIsDebug(true).withStartNodesInProcess(true), dsl -> {
+            try {
+                final NodeHandle partyAHandle = dsl.startNode(new NodeParameters().withProvidedName(bankA.getName())).get();
+                final NodeHandle partyBHandle = dsl.startNode(new NodeParameters().withProvidedName(bankB.getName())).get();
+                final CordaRPCOps rpc = partyAHandle.getRpc();
+                final Party borrower = partyBHandle.getNodeInfo().getLegalIdentities().get(0);
+                final ExampleApi api = new ExampleApi(rpc);
+                final Object vaultUpdates = vaultUpdatesSubject((InProcess) partyAHandle);
+
+                final Deque<CordaFuture<SignedTransaction>> inFlight = new ArrayDeque<>();
+                long completedFlows = 0;
+                final Deque<Subscription> feeds = new ArrayDeque<>();
+                final List<Sample> samples = new ArrayList<>();
+                final long start = System.nanoTime();
+                final long end = start + TimeUnit.MINUTES.toNanos(minutes);
+                long nextSample = start;
+                for (long second = 0; System.nanoTime() < end; second++) {
+                    for (int i = 0; i < flowsPerSecond; i++) {
+                        inFlight.addLast(rpc.startFlowDynamic(
+                                ExampleFlow.Initiator.class, 1 + (int) (second % 100), borrower).getReturnValue());
+                    }
+                    // get() rethrows a failed flow's exception.
+                    final int maxInFlight = flowsPerSecond * MAX_IN_FLIGHT_SECONDS;
+                    while (!inFlight.isEmpty() && (inFlight.peekFirst().isDone() || inFlight.size() > maxInFlight)) {
+                        inFlight.removeFirst().get(5, TimeUnit.MINUTES);
+                        completedFlows++;
+                    }
+                    api.getDashboard("lender,borrower,value", 200);
+                    api.getSummary();
+                    api.getTopIOUs(50);
+                    api.getRecentIOUs(5, 100);
+
+                    feeds.addLast(openFeed(rpc));
+                    if (feeds.size() > OPEN_FEEDS) feeds.removeFirst().unsubscribe();
+
+                    if (System.nanoTime() >= nextSample) {
+                        samples.add(sample(start, vaultUpdates));
+                        nextSample += TimeUnit.SECONDS.toNanos(sampleSeconds);
+                    }
+                    final long sleep = start + TimeUnit.SECONDS.toNanos(second + 1) - System.nanoTime();
+                    if (sleep > 0) TimeUnit.NANOSECONDS.sleep(sleep);
+                }
+                feeds.forEach(Subscription::unsubscribe);
+                while (!inFlight.isEmpty()) {
+                    inFlight.removeFirst().get(5, TimeUnit.MINUTES);
+                    completedFlows++;
+                }
+
+                final List<Sample> steady = samples.subList(samples.size() / 5, samples.size());
+                final double heapSlope = slope(steady, s -> s.heapMb);
+                final double threadSlope = slope(steady, s -> s.threads);
+                final double feedSlope = vaultUpdates != null ? slope(steady, s -> s.vaultSubscribers) : Double.NaN;
+                logger.info(String.format(
+                        "Soak test: %d flows and %d samples over %d minutes. "
+                                + "Growth per hour: heap %.1f MB, threads %.1f, vault subscribers %.2f",
+                        completedFlows, samples.size(), minutes, heapSlope, threadSlope, feedSlope));
+
+                assertTrue("Heap grew by " + heapSlope + " MB/hour", heapSlope <= maxHeapGrowth);
+                assertTrue("Thread count grew by " + threadSlope + " per hour", threadSlope <= maxThreadGrowth);
+                if (vaultUpdates != null) {
+                    assertTrue("The node's vault update subscribers grew by " + feedSlope + " per hour", feedSlope <= 0.5);
+                }
+            } catch (InterruptedException | ExecutionException | TimeoutException e) {
+                throw new RuntimeException("Caught exception during soak test", e);
+            }
+            return null;
+        });
+    }
+
+    // Tracks IOUs the way a dashboard would: a one-row snapshot plus the stream of updates.
+    private static Subscription openFeed(CordaRPCOps rpc) {
+        final DataFeed<Vault.Page<IOUState>, Vault.Update<IOUState>> feed = rpc.vaultTrackBy(
+                new QueryCriteria.VaultQueryCriteria(), new PageSpecification(DEFAULT_PAGE_NUM, 1), new Sort(ImmutableSet.of()), IOUState.class);
+        return feed.getUpdates().subscribe(update -> { });
+    }
+
+    private static Sample sample(long start, Object vaultUpdates) {
+        System.gc();
+        final double heapMb = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed() / (1024.0 * 1024.0);
+        final int threads = ManagementFactory.getThreadMXBean().getThreadCount();
+        double subscribers = Double.NaN;
+        if (vaultUpdates != null) {
+            try {
+                subscribers = subscriberCount(vaultUpdates);
+            } catch (ReflectiveOperationException e) {
+                // The count worked when the probe was found, so this is not expected.
+                throw new IllegalStateException("Cannot count the subscribers of " + vaultUpdates, e);
+            }
+        }
+        return new Sample((System.nanoTime() - start) / 3.6e12, heapMb, threads, subscribers);
+    }
+
+    // The PublishSubject inside the node's vault service that every vault update subscription, including each
+    // vaultTrack feed served over RPC, is attached to, or null if the vault service's internals have changed.
+    private static Object vaultUpdatesSubject(InProcess node) {
+        try {
+            final VaultService vault = node.getServices().getVaultService();
+            final Object threadBox = field(vault, "mutex");
+            final Object subject = field(field(threadBox, "content"), "_updatesPublisher");
+            subscriberCount(subject);
+            return subject;
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            logger.warn("Cannot count the node's vault update subscribers, so feed leaks will not be checked", e);
+            return null;
+        }
+    }
+
+    // RxJava 1.x keeps a subject's subscribers as an array, in an AtomicReference (1.2 onwards) or behind observers().
+    private static int subscriberCount(Object subject) throws ReflectiveOperationException {
+        final Object state = field(subject, "state");
+        final Object subscribers = state instanceof AtomicReference
+                ? ((AtomicReference<?>) state).get()
+                : state.getClass().getMethod("observers").invoke(state);
+        return Array.getLength(subscribers);
+    }
+
+    private static Object field(Object target, String name) throws ReflectiveOperationException {
+        for (Class<?> type = target.getClass(); type != null; type = type.getSuperclass()) {
+            try {
+                final Field field = type.getDeclaredField(name);
+                field.setAccessible(true);
+                return field.get(target);
+            } catch (NoSuchFieldException e) {
+                // Try the superclass.
+            }
+        }
+        throw new NoSuchFieldException(target.getClass().getName() + "." + name);
+    }
+
+    private interface Series {
+        double of(Sample sample);
+    }
+
+    // The least-squares slope of the series against time, in units per hour.
+    private static double slope(List<Sample> samples, Series series) {
+        if (samples.size() < 2) return 0;
+        double meanX = 0, meanY = 0;
+        for (Sample s : samples) {
+            meanX += s.hours;
+            meanY += series.of(s);
+        }
+        meanX /= samples.size();
+        meanY /= samples.size();
+        double covariance = 0, variance = 0;
+        for (Sample s : samples) {
+            covariance += (s.hours - meanX) * (series.of(s) - meanY);
+            variance += (s.hours - meanX) * (s.hours - meanX);
+        }
+        return variance == 0 ? 0 : covariance / variance;
+    }
+}
@@ -0,0 +1,19 @@
+package com.example.benchmark;
+
+import com.google.common.collect.ImmutableList;
+
+import java.util.List;
+
+/**
+ * Settings shared by the benchmarks in this module. What kotlin-source's benchmarks can use too is in
+ * [com.example.parity.BenchmarkSupport].
+ */
+final class Benchmarks {
+    /**
+     * The CorDapp's packages, for the driver to load into its nodes.
+     */
+    static final List<String> CORDAPP_PACKAGES = ImmutableList.of(
+            "com.example.contract", "com.example.flow", "com.example.schema", "com.example.service");
+
+    private Benchmarks() { }
+}
@@ -0,0 +1,125 @@
+package com.example.benchmark;
+
+import com.example.flow.ExampleFlow;
+import com.example.parity.BenchmarkSupport;
+import com.google.common.collect.ImmutableList;
+import net.corda.core.identity.Party;
+import net.corda.testing.node.MockNetwork;
+import net.corda.testing.node.StartedMockNode;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Properties;
+
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Measures [ExampleFlow] throughput on an in-process [MockNetwork], as a quick regression check that avoids the cost
+ * and noise of the driver.
+ *
+ * Flows are started in fixed-size batches, and each batch is completed by pumping one message at a time to each node
+ * in turn, so every run sends the same messages in the same order. Only the time spent running flows is measured:
+ * a warm-up batch is run first so that class loading and JIT compilation are excluded.
+ *
+ * Skipped unless example.benchmark.flows is set, e.g.
+ *   ./gradlew integrationTest --tests '*FlowThroughputBenchmark' -Dexample.benchmark.flows=2000
+ * The results are written to build/reports/flow-throughput.properties. When example.benchmark.flowBaseline names such
+ * a file from an earlier run, the test fails if flows per second dropped by more than example.benchmark.flowTolerance
+ * (default 0.2, i.e. 20%) or if the number of messages per flow grew. Other settings: example.benchmark.flowBatch
+ * (default 50) and example.benchmark.flowWarmup (default 200).
+ */
+public class FlowThroughputBenchmark {
+    private static final Logger logger = LoggerFactory.getLogger(FlowThroughputBenchmark.class);
+    private static final Path REPORT = Paths.get("build", "reports", "flow-throughput.properties");
+    private static final Integer FLOWS = Integer.getInteger("example.benchmark.flows");
+
+    private MockNetwork network;
+    private List<StartedMockNode> nodes;
+    private StartedMockNode a;
+    private StartedMockNode b;
+    private String eventLogDir;
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    @Before
+    public void setup() {
+        assumeTrue("Set example.benchmark.flows to run the flow throughput benchmark", FLOWS != null);
+        // The nodes' IOUEventLogServices would otherwise write their logs under the working directory.
+        eventLogDir = System.getProperty("example.eventLog.dir");
+        System.setProperty("example.eventLog.dir", folder.getRoot().toString());
+        network = new MockNetwork(ImmutableList.of("com.example.contract", "com.example.schema", "com.example.service"));
+        a = network.createPartyNode(null);
+        b = network.createPartyNode(null);
+        // For real nodes this happens automatically, but we have to manually register the flow for tests.
+        for (StartedMockNode node : ImmutableList.of(a, b)) {
+            node.registerInitiatedFlow(ExampleFlow.Acceptor.class);
+        }
+        network.runNetwork();
+        nodes = ImmutableList.of(network.getDefaultNotaryNode(), a, b);
+    }
+
+    @After
+    public void tearDown() {
+        if (network == null) return;
+        network.stopNodes();
+        if (eventLogDir == null) System.clearProperty("example.eventLog.dir");
+        else System.setProperty("example.eventLog.dir", eventLogDir);
+    }
+
+    @Test
+    public void exampleFlowThroughputHasNotRegressed() throws Exception {
+        final int flows = FLOWS;
+        final int batch = Integer.getInteger("example.benchmark.flowBatch", 50);
+        final int warmup = Integer.getInteger("example.benchmark.flowWarmup", 200);
+        final double tolerance = Double.parseDouble(System.getProperty("example.benchmark.flowTolerance", "0.2"));
+        final String baseline = System.getProperty("example.benchmark.flowBaseline");
+        final Party borrower = b.getInfo().getLegalIdentities().get(0);
+
+        BenchmarkSupport.runExampleFlows(a, nodes, borrower, warmup, batch);
+        final long start = System.nanoTime();
+        final long messages = BenchmarkSupport.runExampleFlows(a, nodes, borrower, flows, batch);
+        final double seconds = (System.nanoTime() - start) / 1e9;
+
+        final double flowsPerSecond = flows / seconds;
+        final double messagesPerFlow = (double) messages / flows;
+        logger.info(String.format("ExampleFlow x%d in batches of %d: %.1f flows/s, %.2f msgs/flow",
+                flows, batch, flowsPerSecond, messagesPerFlow));
+
+        final Properties report = new Properties();
+        report.setProperty("flows", String.valueOf(flows));
+        report.setProperty("batch", String.valueOf(batch));
+        report.setProperty("flowsPerSecond", String.valueOf(flowsPerSecond));
+        report.setProperty("messagesPerFlow", String.valueOf(messagesPerFlow));
+        Files.createDirectories(REPORT.getParent());
+        try (OutputStream out = Files.newOutputStream(REPORT)) {
+            report.store(out, "ExampleFlow throughput on MockNetwork");
+        }
+
+        if (baseline != null) {
+            final Properties previous = new Properties();
+            try (InputStream in = Files.newInputStream(Paths.get(baseline))) {
+                previous.load(in);
+            }
+            final double baselineFlowsPerSecond = Double.parseDouble(previous.getProperty("flowsPerSecond"));
+            final double baselineMessagesPerFlow = Double.parseDouble(previous.getProperty("messagesPerFlow"));
+            assertTrue(String.format("Throughput fell from %.1f to %.1f flows/s", baselineFlowsPerSecond, flowsPerSecond),
+                    flowsPerSecond >= baselineFlowsPerSecond * (1 - tolerance));
+            // Message counts don't depend on the machine, so any growth is a real change to the flow.
+            assertTrue(String.format("Messages per flow grew from %.2f to %.2f", baselineMessagesPerFlow, messagesPerFlow),
+                    messagesPerFlow <= baselineMessagesPerFlow + 0.005);
+        }
+    }
+}
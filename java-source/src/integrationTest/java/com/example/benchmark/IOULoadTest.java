@@ -0,0 +1,119 @@
+package com.example.benchmark;
+
+import com.example.api.ExampleApi;
+import com.example.parity.BenchmarkSupport;
+import jdk.jfr.Recording;
+import net.corda.core.identity.CordaX500Name;
+import net.corda.testing.core.TestIdentity;
+import net.corda.testing.driver.NodeHandle;
+import net.corda.testing.driver.NodeParameters;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.ws.rs.core.Response;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static net.corda.testing.driver.Driver.driver;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Drives a mix of create-iou and read calls through [ExampleApi] against an in-process driver network, and reports
+ * throughput and latency.
+ *
+ * Skipped unless example.benchmark.loadRequests is set, e.g.
+ *   ./gradlew integrationTest -Dexample.benchmark.loadRequests=2000 -Dexample.benchmark.loadConcurrency=16
+ *
+ * With -Dexample.benchmark.profile=true the run is recorded with Java Flight Recorder (JDK 8u262+ or 11+). Nodes and
+ * API share this JVM, so one recording covers the [TraceRecorder] stages of the API, Initiator and Acceptor. The
+ * recording is written to build/reports/iou-load.jfr and summarised per stage by [StageProfileSummary] in
+ * build/reports/iou-load-profile.md.
+ */
+public class IOULoadTest {
+    private static final Logger logger = LoggerFactory.getLogger(IOULoadTest.class);
+    private static final Path REPORTS = Paths.get("build", "reports");
+
+    private final TestIdentity bankA = new TestIdentity(new CordaX500Name("BankA", "", "GB"));
+    private final TestIdentity bankB = new TestIdentity(new CordaX500Name("BankB", "", "US"));
+
+    @Test
+    public void loadTest() {
+        final Integer requests = Integer.getInteger("example.benchmark.loadRequests");
+        assumeTrue("Set example.benchmark.loadRequests to run the load test", requests != null);
+        final int concurrency = Integer.getInteger("example.benchmark.loadConcurrency", 8);
+        final boolean profile = Boolean.getBoolean("example.benchmark.profile");
+
+        driver(BenchmarkSupport.inProcessDriver(Benchmarks.CORDAPP_PACKAGES), dsl -> {
+            try {
+                final NodeHandle nodeA = dsl.startNode(new NodeParameters().withProvidedName(bankA.getName())).get();
+                dsl.startNode(new NodeParameters().withProvidedName(bankB.getName())).get();
+                final ExampleApi api = new ExampleApi(nodeA.getRpc());
+
+                final Recording recording = profile ? startRecording() : null;
+                final ExecutorService clients = Executors.newFixedThreadPool(concurrency);
+                final List<Future<Long>> latencies = new ArrayList<>(requests);
+                final long start = System.nanoTime();
+                for (int i = 0; i < requests; i++) {
+                    final int request = i;
+                    latencies.add(clients.submit(() -> {
+                        final long requestStart = System.nanoTime();
+                        // One write to every four reads. The reads avoid endpoints whose unpaged queries fail past 200 IOUs.
+                        if (request % 5 == 0) {
+                            final Response response = api.createIOU(1 + request % 100, bankB.getName(), null);
+                            assertEquals(Response.Status.CREATED.getStatusCode(), response.getStatus());
+                        } else if (request % 5 == 1) {
+                            api.getSummary();
+                        } else {
+                            api.getDashboard(null, 200);
+                        }
+                        return System.nanoTime() - requestStart;
+                    }));
+                }
+                final List<Long> sorted = new ArrayList<>(requests);
+                for (Future<Long> latency : latencies) sorted.add(latency.get());
+                final double seconds = (System.nanoTime() - start) / 1e9;
+                clients.shutdown();
+                Collections.sort(sorted);
+
+                final String summary = String.format("%d requests at concurrency %d: %.1f req/s, p50 %.1f ms, p99 %.1f ms",
+                        requests, concurrency, requests / seconds,
+                        sorted.get(sorted.size() / 2) / 1e6, sorted.get(sorted.size() * 99 / 100) / 1e6);
+                logger.info(summary);
+
+                if (recording != null) {
+                    Files.createDirectories(REPORTS);
+                    final Path recordingFile = REPORTS.resolve("iou-load.jfr");
+                    recording.stop();
+                    recording.dump(recordingFile);
+                    recording.close();
+                    final String profileReport = "# IOU load test profile\n\n" + summary + "\n\n" + StageProfileSummary.summarise(recordingFile);
+                    Files.write(REPORTS.resolve("iou-load-profile.md"), profileReport.getBytes(StandardCharsets.UTF_8));
+                    logger.info("Stage profile written to {}:\n{}", REPORTS.resolve("iou-load-profile.md").toAbsolutePath(), profileReport);
+                }
+            } catch (Exception e) {
+                throw new RuntimeException("Caught exception during load test", e);
+            }
+            return null;
+        });
+    }
+
+    private static Recording startRecording() {
+        final Recording recording = new Recording();
+        recording.setName("iou-load");
+        for (String event : StageProfileSummary.EVENTS) {
+            recording.enable(event);
+        }
+        recording.start();
+        return recording;
+    }
+}
@@ -0,0 +1,55 @@
+package com.example.benchmark;
+
+import co.paralleluniverse.fibers.Suspendable;
+import com.example.contract.IOUContract;
+import com.example.state.IOUState;
+import net.corda.core.contracts.Command;
+import net.corda.core.contracts.UniqueIdentifier;
+import net.corda.core.flows.FlowLogic;
+import net.corda.core.flows.StartableByRPC;
+import net.corda.core.identity.Party;
+import net.corda.core.transactions.SignedTransaction;
+import net.corda.core.transactions.TransactionBuilder;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Writes synthetic IOUs straight into our vault, for benchmarks that need a large vault quickly.
+ *
+ * The IOUs are issued in [BatchCreate] transactions signed only by us and recorded locally. They skip the borrower's
+ * signature and the notary, so the ledger they produce is not valid, but the vault, the IOU schema and the summary
+ * tables are populated just as they would be by real flows.
+ */
+@StartableByRPC
+public class SeedIOUsFlow extends FlowLogic<Integer> {
+    private static final int IOUS_PER_TRANSACTION = 500;
+
+    private final int count;
+    private final Party borrower;
+
+    public SeedIOUsFlow(int count, Party borrower) {
+        this.count = count;
+        this.borrower = borrower;
+    }
+
+    @Suspendable
+    @Override
+    public Integer call() {
+        final Party notary = getServiceHub().getNetworkMapCache().getNotaryIdentities().get(0);
+        final Party me = getOurIdentity();
+        final List<SignedTransaction> transactions = new ArrayList<>();
+        for (int seeded = 0; seeded < count; seeded += IOUS_PER_TRANSACTION) {
+            final TransactionBuilder txBuilder = new TransactionBuilder(notary)
+                    .addCommand(new Command<>(new IOUContract.Commands.BatchCreate(),
+                            Arrays.asList(me.getOwningKey(), borrower.getOwningKey())));
+            for (int i = seeded; i < Math.min(count, seeded + IOUS_PER_TRANSACTION); i++) {
+                txBuilder.addOutputState(new IOUState(1 + i % 100, me, borrower, new UniqueIdentifier()), IOUContract.IOU_CONTRACT_ID);
+            }
+            transactions.add(getServiceHub().signInitialTransaction(txBuilder));
+        }
+        getServiceHub().recordTransactions(transactions);
+        return count;
+    }
+}
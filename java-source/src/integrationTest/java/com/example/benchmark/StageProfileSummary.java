@@ -0,0 +1,120 @@
+package com.example.benchmark;
+
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.*;
+
+/**
+ * Summarises a Java Flight Recorder recording by IOU stage: how often each stage ran, how long it took and roughly
+ * how much it allocated.
+ *
+ * Stages come from com.example.Stage events, which [TraceRecorder] commits when a stage ends. Allocation comes from
+ * jdk.ObjectAllocationInNewTLAB (counting the new TLAB's size) and jdk.ObjectAllocationOutsideTLAB events. Each
+ * allocation is charged to every stage running on the same thread at that moment, so nested stages are inclusive. A
+ * stage that suspends is also charged for whatever else its thread ran meanwhile, so treat its figure as an upper
+ * bound.
+ */
+public class StageProfileSummary {
+    private static final String STAGE_EVENT = "com.example.Stage";
+    private static final String IN_NEW_TLAB = "jdk.ObjectAllocationInNewTLAB";
+    private static final String OUTSIDE_TLAB = "jdk.ObjectAllocationOutsideTLAB";
+
+    public static final List<String> EVENTS = Arrays.asList(STAGE_EVENT, IN_NEW_TLAB, OUTSIDE_TLAB);
+
+    private static class Span {
+        final String stage;
+        final long startNanos;
+        final long endNanos;
+
+        Span(String stage, long startNanos, long endNanos) {
+            this.stage = stage;
+            this.startNanos = startNanos;
+            this.endNanos = endNanos;
+        }
+    }
+
+    private static class Totals {
+        long count;
+        long totalMicros;
+        long maxMicros;
+        long allocatedBytes;
+    }
+
+    /**
+     * Reads [recording] and returns a markdown table with one row per stage, ordered by bytes allocated.
+     */
+    public static String summarise(Path recording) throws IOException {
+        final Map<Long, List<Span>> spansByThread = new HashMap<>();
+        final Map<Long, List<long[]>> allocationsByThread = new HashMap<>();
+        final Map<String, Totals> totals = new TreeMap<>();
+
+        for (RecordedEvent event : RecordingFile.readAllEvents(recording)) {
+            if (event.getThread() == null) continue;
+            final long thread = event.getThread().getJavaThreadId();
+            final String type = event.getEventType().getName();
+            final long time = nanos(event.getEndTime());
+            if (type.equals(STAGE_EVENT)) {
+                final String stage = event.getString("stage");
+                final long durationMicros = event.getLong("durationMicros");
+                spansByThread.computeIfAbsent(thread, t -> new ArrayList<>())
+                        .add(new Span(stage, time - durationMicros * 1000, time));
+                final Totals stageTotals = totals.computeIfAbsent(stage, s -> new Totals());
+                stageTotals.count++;
+                stageTotals.totalMicros += durationMicros;
+                stageTotals.maxMicros = Math.max(stageTotals.maxMicros, durationMicros);
+            } else if (type.equals(IN_NEW_TLAB)) {
+                allocationsByThread.computeIfAbsent(thread, t -> new ArrayList<>()).add(new long[]{time, event.getLong("tlabSize")});
+            } else if (type.equals(OUTSIDE_TLAB)) {
+                allocationsByThread.computeIfAbsent(thread, t -> new ArrayList<>()).add(new long[]{time, event.getLong("allocationSize")});
+            }
+        }
+
+        // Per thread, sort allocations by time and use prefix sums to total each stage's window.
+        for (Map.Entry<Long, List<Span>> entry : spansByThread.entrySet()) {
+            final List<long[]> allocations = allocationsByThread.getOrDefault(entry.getKey(), Collections.emptyList());
+            allocations.sort(Comparator.comparingLong(allocation -> allocation[0]));
+            final long[] times = new long[allocations.size()];
+            final long[] cumulative = new long[allocations.size() + 1];
+            for (int i = 0; i < allocations.size(); i++) {
+                times[i] = allocations.get(i)[0];
+                cumulative[i + 1] = cumulative[i] + allocations.get(i)[1];
+            }
+            for (Span span : entry.getValue()) {
+                totals.get(span.stage).allocatedBytes +=
+                        cumulative[upperBound(times, span.endNanos)] - cumulative[upperBound(times, span.startNanos - 1)];
+            }
+        }
+
+        final List<Map.Entry<String, Totals>> rows = new ArrayList<>(totals.entrySet());
+        rows.sort((x, y) -> Long.compare(y.getValue().allocatedBytes, x.getValue().allocatedBytes));
+        final StringBuilder table = new StringBuilder()
+                .append("| stage | count | mean ms | max ms | allocated MB | allocated KB/call |\n")
+                .append("|---|---:|---:|---:|---:|---:|\n");
+        for (Map.Entry<String, Totals> row : rows) {
+            final Totals t = row.getValue();
+            table.append(String.format("| %s | %d | %.2f | %.2f | %.1f | %.1f |%n", row.getKey(), t.count,
+                    t.totalMicros / 1000.0 / t.count, t.maxMicros / 1000.0,
+                    t.allocatedBytes / (1024.0 * 1024.0), t.allocatedBytes / 1024.0 / t.count));
+        }
+        return table.toString();
+    }
+
+    // The number of entries in sorted [times] that are <= [time].
+    private static int upperBound(long[] times, long time) {
+        int low = 0;
+        int high = times.length;
+        while (low < high) {
+            final int mid = (low + high) >>> 1;
+            if (times[mid] <= time) low = mid + 1; else high = mid;
+        }
+        return low;
+    }
+
+    private static long nanos(Instant instant) {
+        return instant.getEpochSecond() * 1_000_000_000L + instant.getNano();
+    }
+}
@@ -0,0 +1,213 @@
+package com.example.benchmark;
+
+import com.example.parity.BenchmarkSupport;
+import net.corda.core.concurrent.CordaFuture;
+import net.corda.core.identity.CordaX500Name;
+import net.corda.testing.driver.NodeHandle;
+import net.corda.testing.driver.NodeParameters;
+import okhttp3.*;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
+
+import static net.corda.testing.driver.Driver.driver;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Replays API traffic recorded by [TrafficCapture] against a fresh driver network, at the original pace or faster,
+ * and compares the latency of each endpoint with the capture and, optionally, with an earlier replay.
+ *
+ * The network holds the node the traffic was captured on and every party named in its create-iou calls. Requests
+ * are sent to that node's webserver at their captured offsets divided by the speed-up. Calls that named IOUs which
+ * only existed on the captured network (e.g. /ious/{linearId}) are replayed as-is and will typically return 404.
+ * Responses other than 2xx, and calls that got no response at all, are counted per endpoint in the report's last
+ * column and left out of the replay percentiles, so that fast failures don't pass for fast calls.
+ *
+ * Skipped unless example.benchmark.replayFile is set, e.g.
+ *   ./gradlew integrationTest -Dexample.benchmark.replayFile=capture.gz -Dexample.benchmark.replaySpeed=10
+ * Results are written to build/reports/traffic-replay.tsv. Passing an earlier run's file as
+ * example.benchmark.replayBaseline adds its percentiles to the report, so that two builds can be compared.
+ */
+public class TrafficReplay {
+    private static final Logger logger = LoggerFactory.getLogger(TrafficReplay.class);
+    private static final Path REPORT = Paths.get("build", "reports", "traffic-replay.tsv");
+    private static final String LINEAR_ID = "[0-9a-fA-F]{8}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{12}";
+
+    private static class CapturedRequest {
+        final long offsetMillis;
+        final String method;
+        final String pathAndQuery;
+        final long latencyMicros;
+
+        CapturedRequest(String line) {
+            final String[] fields = line.split("\t");
+            this.offsetMillis = Long.parseLong(fields[0]);
+            this.method = fields[1];
+            this.pathAndQuery = fields[2];
+            this.latencyMicros = Long.parseLong(fields[4]);
+        }
+
+        // Groups requests by endpoint rather than by their ids and parameters.
+        String endpoint() {
+            final int query = pathAndQuery.indexOf('?');
+            return method + " " + (query < 0 ? pathAndQuery : pathAndQuery.substring(0, query)).replaceAll(LINEAR_ID, "{linearId}");
+        }
+    }
+
+    @Test
+    public void replayCapturedTraffic() throws Exception {
+        final String file = System.getProperty("example.benchmark.replayFile");
+        assumeTrue("Set example.benchmark.replayFile to replay captured traffic", file != null);
+        final double speed = Double.parseDouble(System.getProperty("example.benchmark.replaySpeed", "1"));
+        final String baseline = System.getProperty("example.benchmark.replayBaseline");
+
+        final List<CapturedRequest> requests = new ArrayList<>();
+        final CordaX500Name capturedNode;
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new GZIPInputStream(Files.newInputStream(Paths.get(file))), StandardCharsets.UTF_8))) {
+            capturedNode = CordaX500Name.parse(reader.readLine().substring("# node ".length()));
+            try {
+                for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+                    if (!line.isEmpty()) requests.add(new CapturedRequest(line));
+                }
+            } catch (EOFException e) {
+                // A capture cut short ends mid-stream, but every line flushed before that is intact.
+            }
+        }
+        final Set<CordaX500Name> counterparties = new TreeSet<>(Comparator.comparing(CordaX500Name::toString));
+        for (CapturedRequest request : requests) {
+            final String partyName = queryParameter(request.pathAndQuery, "partyName");
+            if (partyName != null && !partyName.equals(capturedNode.toString())) counterparties.add(CordaX500Name.parse(partyName));
+        }
+
+        final Map<String, List<Long>> replayed = new ConcurrentHashMap<>();
+        final Map<String, AtomicInteger> failed = new ConcurrentHashMap<>();
+        driver(BenchmarkSupport.inProcessDriver(Benchmarks.CORDAPP_PACKAGES), dsl -> {
+            try {
+                final NodeHandle node = dsl.startNode(new NodeParameters().withProvidedName(capturedNode)).get();
+                final List<CordaFuture<NodeHandle>> others = new ArrayList<>();
+                for (CordaX500Name counterparty : counterparties) {
+                    others.add(dsl.startNode(new NodeParameters().withProvidedName(counterparty)));
+                }
+                for (CordaFuture<NodeHandle> other : others) other.get();
+                final OkHttpClient client = BenchmarkSupport.httpClient(256, 5);
+                replay(client, BenchmarkSupport.startWebserver(dsl, node, client), requests, speed, replayed, failed);
+                client.dispatcher().executorService().shutdown();
+            } catch (Exception e) {
+                throw new RuntimeException("Caught exception during replay", e);
+            }
+            return null;
+        });
+
+        final Map<String, List<Long>> captured = new TreeMap<>();
+        for (CapturedRequest request : requests) {
+            captured.computeIfAbsent(request.endpoint(), e -> new ArrayList<>()).add(request.latencyMicros);
+        }
+        final Map<String, String[]> baselineRows = new HashMap<>();
+        if (baseline != null) {
+            for (String line : Files.readAllLines(Paths.get(baseline), StandardCharsets.UTF_8)) {
+                final String[] fields = line.split("\t");
+                baselineRows.put(fields[0], fields);
+            }
+        }
+
+        final StringBuilder report = new StringBuilder(
+                "endpoint\tcount\tcaptured p50 ms\tcaptured p99 ms\treplay p50 ms\treplay p90 ms\treplay p99 ms\tbaseline p50 ms\tbaseline p99 ms\treplay non-2xx\n");
+        for (Map.Entry<String, List<Long>> entry : captured.entrySet()) {
+            final List<Long> replay = replayed.getOrDefault(entry.getKey(), new ArrayList<>());
+            final String[] previous = baselineRows.get(entry.getKey());
+            report.append(String.join("\t", entry.getKey(), String.valueOf(entry.getValue().size()),
+                    percentile(entry.getValue(), 50), percentile(entry.getValue(), 99),
+                    percentile(replay, 50), percentile(replay, 90), percentile(replay, 99),
+                    previous == null ? "" : previous[4], previous == null ? "" : previous[6],
+                    String.valueOf(failed.getOrDefault(entry.getKey(), new AtomicInteger()).get()))).append('\n');
+        }
+        Files.createDirectories(REPORT.getParent());
+        Files.write(REPORT, report.toString().getBytes(StandardCharsets.UTF_8));
+        logger.info("Traffic replay report written to {}:\n{}", REPORT.toAbsolutePath(), report);
+    }
+
+    // Records the latency of each 2xx response in [latencies], and counts every other outcome in [failed].
+    private static void replay(OkHttpClient client, String baseUrl, List<CapturedRequest> requests, double speed,
+                               Map<String, List<Long>> latencies, Map<String, AtomicInteger> failed) throws InterruptedException {
+        final CountDownLatch outstanding = new CountDownLatch(requests.size());
+        final long replayStart = System.nanoTime();
+
+        for (CapturedRequest captured : requests) {
+            final long due = replayStart + (long) (captured.offsetMillis * 1_000_000L / speed);
+            final long wait = due - System.nanoTime();
+            if (wait > 0) TimeUnit.NANOSECONDS.sleep(wait);
+
+            final Request request = new Request.Builder()
+                    .url(baseUrl + captured.pathAndQuery)
+                    .method(captured.method, captured.method.equals("PUT") || captured.method.equals("POST") ? RequestBody.create(null, new byte[0]) : null)
+                    .build();
+            final long sent = System.nanoTime();
+            client.newCall(request).enqueue(new Callback() {
+                @Override
+                public void onResponse(Call call, Response response) throws IOException {
+                    try (ResponseBody body = response.body()) {
+                        if (body != null) body.bytes();
+                        record(response.isSuccessful());
+                    }
+                }
+
+                @Override
+                public void onFailure(Call call, IOException e) {
+                    record(false);
+                }
+
+                private void record(boolean successful) {
+                    if (successful) {
+                        latencies.computeIfAbsent(captured.endpoint(), e -> Collections.synchronizedList(new ArrayList<>()))
+                                .add((System.nanoTime() - sent) / 1000);
+                    } else {
+                        failed.computeIfAbsent(captured.endpoint(), e -> new AtomicInteger()).incrementAndGet();
+                    }
+                    outstanding.countDown();
+                }
+            });
+        }
+        outstanding.await();
+    }
+
+    private static String queryParameter(String pathAndQuery, String name) {
+        final int query = pathAndQuery.indexOf('?');
+        if (query < 0) return null;
+        for (String parameter : pathAndQuery.substring(query + 1).split("&")) {
+            if (parameter.startsWith(name + "=")) {
+                try {
+                    return URLDecoder.decode(parameter.substring(name.length() + 1), "UTF-8");
+                } catch (UnsupportedEncodingException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+        }
+        return null;
+    }
+
+    private static String percentile(List<Long> micros, int percentile) {
+        if (micros.isEmpty()) return "";
+        final List<Long> sorted = new ArrayList<>(micros);
+        Collections.sort(sorted);
+        final long value = sorted.get(Math.min(sorted.size() - 1, sorted.size() * percentile / 100));
+        return String.format("%.1f", value / 1000.0);
+    }
+}
@@ -0,0 +1,143 @@
+package com.example.benchmark;
+
+import com.example.api.ExampleApi;
+import com.example.parity.BenchmarkSupport;
+import com.example.state.IOUState;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import net.corda.client.jackson.JacksonSupport;
+import net.corda.core.identity.CordaX500Name;
+import net.corda.core.identity.Party;
+import net.corda.core.messaging.CordaRPCOps;
+import net.corda.core.node.services.vault.PageSpecification;
+import net.corda.core.node.services.vault.QueryCriteria;
+import net.corda.core.node.services.vault.Sort;
+import net.corda.testing.core.TestIdentity;
+import net.corda.testing.driver.NodeHandle;
+import net.corda.testing.driver.NodeParameters;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.ws.rs.core.Response;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+import static java.util.stream.Collectors.toList;
+import static net.corda.core.node.services.vault.QueryCriteriaUtils.DEFAULT_PAGE_NUM;
+import static net.corda.testing.driver.Driver.driver;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Measures how each read endpoint of [ExampleApi] scales with the number of IOUs in the vault.
+ *
+ * The vault is seeded with [SeedIOUsFlow] up to each size in turn. At each size every endpoint is called a few times
+ * against the node's RPC proxy, and the report records the median latency, the heap growth across the call and the
+ * size of the JSON the webserver would return. An endpoint that fails (e.g. an unpaged query over too many states)
+ * is reported with its error.
+ *
+ * Skipped unless example.benchmark.sizes is set, e.g.
+ *   ./gradlew integrationTest -Dexample.benchmark.sizes=10000,100000,1000000
+ * The report is written to example.benchmark.report, by default build/reports/vault-scale-benchmark.md.
+ */
+public class VaultScaleBenchmark {
+    private static final Logger logger = LoggerFactory.getLogger(VaultScaleBenchmark.class);
+    private static final int SEED_CHUNK = 5000;
+    private static final int REPETITIONS = 5;
+
+    private final TestIdentity bankA = new TestIdentity(new CordaX500Name("BankA", "", "GB"));
+    private final TestIdentity bankB = new TestIdentity(new CordaX500Name("BankB", "", "US"));
+
+    @Test
+    public void vaultScaleBenchmark() {
+        final String sizes = System.getProperty("example.benchmark.sizes");
+        assumeTrue("Set example.benchmark.sizes to run the vault-scale benchmark", sizes != null);
+        final List<Integer> vaultSizes = Splitter.on(',').trimResults().omitEmptyStrings().splitToList(sizes)
+                .stream().map(Integer::valueOf).sorted().collect(toList());
+        final Path reportFile = Paths.get(System.getProperty("example.benchmark.report", "build/reports/vault-scale-benchmark.md"));
+
+        final List<String> packages = ImmutableList.<String>builder()
+                .addAll(Benchmarks.CORDAPP_PACKAGES).add("com.example.benchmark").build();
+        driver(BenchmarkSupport.inProcessDriver(packages), dsl -> {
+            try {
+                final NodeHandle nodeA = dsl.startNode(new NodeParameters().withProvidedName(bankA.getName())).get();
+                final NodeHandle nodeB = dsl.startNode(new NodeParameters().withProvidedName(bankB.getName())).get();
+                final CordaRPCOps rpc = nodeA.getRpc();
+                final Party borrower = nodeB.getNodeInfo().getLegalIdentities().get(0);
+                final ExampleApi api = new ExampleApi(rpc);
+                final ObjectMapper mapper = JacksonSupport.createDefaultMapper(rpc);
+
+                final StringBuilder report = new StringBuilder("# Vault-scale benchmark\n\n")
+                        .append("| IOUs | endpoint | median ms | heap growth KB | response KB |\n")
+                        .append("|---:|---|---:|---:|---:|\n");
+                int seeded = 0;
+                for (int size : vaultSizes) {
+                    while (seeded < size) {
+                        final int chunk = Math.min(SEED_CHUNK, size - seeded);
+                        seeded += rpc.startFlowDynamic(SeedIOUsFlow.class, chunk, borrower).getReturnValue().get();
+                    }
+                    final String linearId = rpc.vaultQueryBy(new QueryCriteria.VaultQueryCriteria(),
+                            new PageSpecification(DEFAULT_PAGE_NUM, 1), new Sort(ImmutableSet.of()), IOUState.class)
+                            .getStates().get(0).getState().getData().getLinearId().getId().toString();
+
+                    measure(report, mapper, size, "/me", api::whoami);
+                    measure(report, mapper, size, "/peers", api::getPeers);
+                    measure(report, mapper, size, "/ious", api::getIOUs);
+                    measure(report, mapper, size, "/my-ious", api::getMyIOUs);
+                    measure(report, mapper, size, "/ious/{linearId}", () -> api.getIOU(linearId));
+                    measure(report, mapper, size, "/ious/{linearId}/history", () -> api.getIOUHistory(linearId, 1, 200));
+                    measure(report, mapper, size, "/dashboard", () -> api.getDashboard(null, 200));
+                    measure(report, mapper, size, "/summary", api::getSummary);
+                    measure(report, mapper, size, "/summary/daily", () -> api.getDailySummary(null));
+                }
+
+                Files.createDirectories(reportFile.toAbsolutePath().getParent());
+                Files.write(reportFile, report.toString().getBytes(StandardCharsets.UTF_8));
+                logger.info("Vault scale report written to {}:\n{}", reportFile.toAbsolutePath(), report);
+            } catch (Exception e) {
+                throw new RuntimeException("Caught exception during benchmark", e);
+            }
+            return null;
+        });
+    }
+
+    private static void measure(StringBuilder report, ObjectMapper mapper, int size, String endpoint, Callable<Object> call) {
+        final MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        final List<Long> latencies = new ArrayList<>();
+        long heapGrowth = 0;
+        long responseBytes = 0;
+        try {
+            for (int i = 0; i < REPETITIONS; i++) {
+                System.gc();
+                final long heapBefore = memory.getHeapMemoryUsage().getUsed();
+                final long start = System.nanoTime();
+                Object result = call.call();
+                latencies.add(System.nanoTime() - start);
+                heapGrowth = Math.max(heapGrowth, memory.getHeapMemoryUsage().getUsed() - heapBefore);
+                if (result instanceof Response) result = ((Response) result).getEntity();
+                responseBytes = mapper.writeValueAsBytes(result).length;
+            }
+        } catch (Exception e) {
+            report.append(String.format("| %d | %s | error: %s | | |%n", size, endpoint, rootCause(e)));
+            return;
+        }
+        latencies.sort(null);
+        report.append(String.format("| %d | %s | %.1f | %d | %.1f |%n",
+                size, endpoint, latencies.get(latencies.size() / 2) / 1e6, heapGrowth / 1024, responseBytes / 1024.0));
+    }
+
+    private static String rootCause(Throwable e) {
+        while (e.getCause() != null) e = e.getCause();
+        return e.getClass().getSimpleName() + " " + String.valueOf(e.getMessage()).replace('|', '/').replace('\n', ' ');
+    }
+}
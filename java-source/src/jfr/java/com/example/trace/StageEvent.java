@@ -0,0 +1,49 @@
+package com.example.trace;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/**
+ * A Java Flight Recorder event for one stage of an IOU request, emitted by [TraceRecorder] when the stage ends.
+ *
+ * Stages in flows may suspend and resume on another thread, and only primitive start times can safely be held across
+ * a suspension. So the event is committed at the end of the stage, carrying its own duration, rather than spanning
+ * it with begin() and commit().
+ *
+ * This class is in the jfr source set, which is only compiled by JDKs that have the jdk.jfr API (8u262+ or 11+).
+ * [TraceRecorder] loads it reflectively, so the rest of the CorDapp builds and runs without it.
+ */
+@Name(StageEvent.NAME)
+@Label("IOU Stage")
+@Category({"Corda", "IOU"})
+@Description("One stage of an IOU request in the web API, Initiator or Acceptor")
+class StageEvent extends Event {
+    static final String NAME = "com.example.Stage";
+
+    @Label("Component")
+    String component;
+
+    @Label("Stage")
+    String stage;
+
+    @Label("Trace Id")
+    String traceId;
+
+    @Label("Stage Duration")
+    @Timespan(Timespan.MICROSECONDS)
+    long durationMicros;
+
+    static void emit(String component, String stage, String traceId, long durationMicros) {
+        final StageEvent event = new StageEvent();
+        if (!event.isEnabled()) return;
+        event.component = component;
+        event.stage = stage;
+        event.traceId = traceId;
+        event.durationMicros = durationMicros;
+        event.commit();
+    }
+}
@@ -1,47 +1,113 @@
 package com.example.api;
 
+import com.example.client.IOUProposalValidator;
+import com.example.flow.BatchIOUFlow;
 import com.example.flow.ExampleFlow;
+import com.example.flow.IOUSummaryFlows;
 import com.example.schema.IOUSchemaV1;
+import com.example.service.IOUSummary;
 import com.example.state.IOUState;
+import com.example.trace.TraceRecorder;
+import com.google.common.base.Splitter;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
 import net.corda.core.contracts.StateAndRef;
+import net.corda.core.contracts.UniqueIdentifier;
+import net.corda.core.crypto.SecureHash;
 import net.corda.core.identity.CordaX500Name;
 import net.corda.core.identity.Party;
 import net.corda.core.messaging.CordaRPCOps;
+import net.corda.core.messaging.FlowHandle;
 import net.corda.core.node.NodeInfo;
 import net.corda.core.node.services.Vault;
 import net.corda.core.node.services.vault.*;
 import net.corda.core.transactions.SignedTransaction;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import rx.Subscription;
 
 import javax.ws.rs.*;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 import java.lang.reflect.Field;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Supplier;
 
 import static java.util.stream.Collectors.toList;
 import static javax.ws.rs.core.Response.Status.BAD_REQUEST;
 import static javax.ws.rs.core.Response.Status.CREATED;
+import static javax.ws.rs.core.Response.Status.NOT_FOUND;
 import static javax.ws.rs.core.Response.Status.OK;
+import static javax.ws.rs.core.Response.Status.SERVICE_UNAVAILABLE;
+import static net.corda.core.node.services.vault.QueryCriteriaUtils.DEFAULT_PAGE_NUM;
 
 // This API is accessible from /api/example. All paths specified below are relative to it.
+// Close it when the webserver stops (see [ShutdownListener]) to stop its batcher and its vault feed.
 @Path("example")
-public class ExampleApi {
+public class ExampleApi implements AutoCloseable {
     private final CordaRPCOps rpcOps;
+    private final Party me;
     private final CordaX500Name myLegalName;
+    private final String traceComponent;
 
     private final List<String> serviceNames = ImmutableList.of("Notary");
+    private final FlowAdmissionControl admissionControl = FlowAdmissionControl.fromSystemProperties();
+    private final ConcurrentMap<String, CompletableFuture<SecureHash>> inFlightRequests = new ConcurrentHashMap<>();
+    private final IOUBatcher batcher;
+    private final Subscription iouCacheFeed;
+    private final LruCache<UUID, StateAndRef<IOUState>> iouCache = new LruCache<>(Integer.getInteger("example.iouCache.maxEntries", 10000));
+    private volatile boolean iouCacheTracked = true;
+    private volatile boolean ready = false;
 
     static private final Logger logger = LoggerFactory.getLogger(ExampleApi.class);
+    // Not present in javax.ws.rs.core.Response.Status until JAX-RS 2.1.
+    static private final int TOO_MANY_REQUESTS = 429;
+    static private final List<String> DASHBOARD_FIELDS = ImmutableList.of("linearId", "lender", "borrower", "counterparty", "value");
+    static private final int MAX_QUERY_LIMIT = 1000;
 
     public ExampleApi(CordaRPCOps rpcOps) {
         this.rpcOps = rpcOps;
-        this.myLegalName = rpcOps.nodeInfo().getLegalIdentities().get(0).getName();
+        this.me = rpcOps.nodeInfo().getLegalIdentities().get(0);
+        this.myLegalName = me.getName();
+        this.traceComponent = "webserver " + myLegalName.getOrganisation();
+        this.batcher = IOUBatcher.fromSystemProperties(me, this::startBatchFlow);
+
+        // Any IOU produced or consumed is dropped from the point-lookup cache. A one-row page keeps the snapshot cheap.
+        this.iouCacheFeed = rpcOps.vaultTrackBy(new QueryCriteria.VaultQueryCriteria(), new PageSpecification(DEFAULT_PAGE_NUM, 1), new Sort(ImmutableSet.of()), IOUState.class)
+                .getUpdates()
+                .subscribe(update -> {
+                    update.getConsumed().forEach(stateAndRef -> iouCache.invalidate(stateAndRef.getState().getData().getLinearId().getId()));
+                    update.getProduced().forEach(stateAndRef -> iouCache.invalidate(stateAndRef.getState().getData().getLinearId().getId()));
+                }, e -> {
+                    // Without updates the cache can't be kept current, so stop using it.
+                    logger.error("The vault feed for the IOU cache failed; IOU lookups will no longer be cached", e);
+                    iouCacheTracked = false;
+                    iouCache.invalidateAll();
+                });
+    }
+
+    /**
+     * Stops the [IOUBatcher], failing any request still waiting on it, and closes the vault feed behind the IOU cache.
+     */
+    @Override
+    public void close() {
+        batcher.close();
+        iouCacheFeed.unsubscribe();
     }
 
     /**
@@ -54,6 +120,21 @@ public class ExampleApi {
         return ImmutableMap.of("me", myLegalName);
     }
 
+    /**
+     * Reports whether the API has finished warming up (see [WebServerWarmup]): HTTP 200 once it has, and HTTP 503
+     * until then, so that a load balancer holds traffic back from a freshly restarted webserver.
+     */
+    @GET
+    @Path("ready")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response getReadiness() {
+        return Response.status(ready ? OK : SERVICE_UNAVAILABLE).entity(ImmutableMap.of("ready", ready)).build();
+    }
+
+    void markReady() {
+        ready = true;
+    }
+
     /**
      * Returns all parties registered with the [NetworkMapService]. These names can be used to look up identities
      * using the [IdentityService].
@@ -62,7 +143,7 @@ public class ExampleApi {
     @Path("peers")
     @Produces(MediaType.APPLICATION_JSON)
     public Map<String, List<CordaX500Name>> getPeers() {
-        List<NodeInfo> nodeInfoSnapshot = rpcOps.networkMapSnapshot();
+        List<NodeInfo> nodeInfoSnapshot = traced("api.rpc.networkMapSnapshot", rpcOps::networkMapSnapshot);
         return ImmutableMap.of("peers", nodeInfoSnapshot
                 .stream()
                 .map(node -> node.getLegalIdentities().get(0).getName())
@@ -77,7 +158,161 @@ public class ExampleApi {
     @Path("ious")
     @Produces(MediaType.APPLICATION_JSON)
     public List<StateAndRef<IOUState>> getIOUs() {
-        return rpcOps.vaultQuery(IOUState.class).getStates();
+        return traced("api.rpc.vaultQuery", () -> rpcOps.vaultQuery(IOUState.class)).getStates();
+    }
+
+    /**
+     * Displays the current (unconsumed) IOU with the given linearId, or HTTP 404 if there is none.
+     *
+     * The lookup uses the iou_linear_id_idx index on the IOU table, and recently read IOUs are served from an LRU cache
+     * that is invalidated by vault updates. A result is only cached if no update arrived while it was being read.
+     */
+    @GET
+    @Path("ious/{linearId}")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response getIOU(@PathParam("linearId") String linearId) {
+        final UUID id;
+        try {
+            id = UUID.fromString(linearId);
+        } catch (IllegalArgumentException e) {
+            return Response.status(BAD_REQUEST).entity("Path parameter 'linearId' must be a UUID.\n").build();
+        }
+
+        StateAndRef<IOUState> iou = iouCache.get(id);
+        if (iou == null) {
+            final long generation = iouCache.generation();
+            final QueryCriteria criteria = byLinearId(id, Vault.StateStatus.UNCONSUMED);
+            final List<StateAndRef<IOUState>> results = traced("api.rpc.vaultQuery", () -> rpcOps.vaultQueryByCriteria(criteria, IOUState.class)).getStates();
+            if (results.isEmpty()) {
+                return Response.status(NOT_FOUND).entity("No IOU with linearId " + id + ".\n").build();
+            }
+            iou = results.get(0);
+            if (iouCacheTracked) iouCache.putIfUnchanged(id, iou, generation);
+        }
+        return Response.status(OK).entity(iou).build();
+    }
+
+    // Matches IOUs on the IOU table's indexed linear_id column.
+    private static QueryCriteria byLinearId(UUID id, Vault.StateStatus status) {
+        final Field linearId;
+        try {
+            linearId = IOUSchemaV1.PersistentIOU.class.getDeclaredField("linearId");
+        } catch (NoSuchFieldException e) {
+            throw new IllegalStateException(e);
+        }
+        return new QueryCriteria.VaultCustomQueryCriteria(Builder.equal(linearId, id), status);
+    }
+
+    /**
+     * Displays the 'limit' (default 50, at most 1000) unconsumed IOUs with the largest values, largest first.
+     *
+     * The sort on the IOU table's value column and the limit are applied by the database, so the response holds at
+     * most 'limit' IOUs however large the vault is.
+     */
+    @GET
+    @Path("ious/top")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response getTopIOUs(@QueryParam("limit") @DefaultValue("50") int limit) throws NoSuchFieldException {
+        if (limit < 1 || limit > MAX_QUERY_LIMIT) {
+            return Response.status(BAD_REQUEST).entity("Query parameter 'limit' must be between 1 and " + MAX_QUERY_LIMIT + ".\n").build();
+        }
+        // The condition on value brings the IOU table into the query, so that it can be sorted on.
+        final Field value = IOUSchemaV1.PersistentIOU.class.getDeclaredField("value");
+        final QueryCriteria criteria = new QueryCriteria.VaultQueryCriteria(Vault.StateStatus.UNCONSUMED)
+                .and(new QueryCriteria.VaultCustomQueryCriteria(Builder.notNull(value)));
+        final Sort byValue = new Sort(ImmutableSet.of(new Sort.SortColumn(
+                new SortAttribute.Custom(IOUSchemaV1.PersistentIOU.class, "value"), Sort.Direction.DESC)));
+        final List<StateAndRef<IOUState>> results = traced("api.rpc.vaultQuery", () -> rpcOps.vaultQueryBy(
+                criteria, new PageSpecification(DEFAULT_PAGE_NUM, limit), byValue, IOUState.class)).getStates();
+        return Response.status(OK).entity(results).build();
+    }
+
+    /**
+     * Displays the unconsumed IOUs recorded in the last 'minutes' (default 60), newest first, up to 'limit' (default
+     * 200, at most 1000) of them. The X-Total-Count header gives how many matched in all.
+     *
+     * The recorded-time condition, the sort and the limit are applied by the database.
+     */
+    @GET
+    @Path("ious/recent")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response getRecentIOUs(@QueryParam("minutes") @DefaultValue("60") long minutes,
+                                  @QueryParam("limit") @DefaultValue("200") int limit) {
+        if (minutes < 1) {
+            return Response.status(BAD_REQUEST).entity("Query parameter 'minutes' must be positive.\n").build();
+        }
+        if (limit < 1 || limit > MAX_QUERY_LIMIT) {
+            return Response.status(BAD_REQUEST).entity("Query parameter 'limit' must be between 1 and " + MAX_QUERY_LIMIT + ".\n").build();
+        }
+        final QueryCriteria.TimeCondition recordedSince = new QueryCriteria.TimeCondition(
+                QueryCriteria.TimeInstantType.RECORDED,
+                new ColumnPredicate.BinaryComparison<>(BinaryComparisonOperator.GREATER_THAN_OR_EQUAL, Instant.now().minus(Duration.ofMinutes(minutes))));
+        final QueryCriteria criteria = new QueryCriteria.VaultQueryCriteria(Vault.StateStatus.UNCONSUMED, null, null, null, null, recordedSince);
+        final Sort newestFirst = new Sort(ImmutableSet.of(new Sort.SortColumn(
+                new SortAttribute.Standard(Sort.VaultStateAttribute.RECORDED_TIME), Sort.Direction.DESC)));
+        final Vault.Page<IOUState> page = traced("api.rpc.vaultQuery", () -> rpcOps.vaultQueryBy(
+                criteria, new PageSpecification(DEFAULT_PAGE_NUM, limit), newestFirst, IOUState.class));
+        return Response.status(OK).entity(page.getStates()).header("X-Total-Count", page.getTotalStatesAvailable()).build();
+    }
+
+    /**
+     * Displays the versions of the IOU with the given linearId, consumed or not, oldest first, one page of 'limit'
+     * (default 200, at most 1000) at a time. 'page' starts at 1. The X-Total-Count header gives how many versions there
+     * are in all.
+     */
+    @GET
+    @Path("ious/{linearId}/history")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response getIOUHistory(@PathParam("linearId") String linearId,
+                                  @QueryParam("page") @DefaultValue("1") int page,
+                                  @QueryParam("limit") @DefaultValue("200") int limit) {
+        final UUID id;
+        try {
+            id = UUID.fromString(linearId);
+        } catch (IllegalArgumentException e) {
+            return Response.status(BAD_REQUEST).entity("Path parameter 'linearId' must be a UUID.\n").build();
+        }
+        if (page < DEFAULT_PAGE_NUM) {
+            return Response.status(BAD_REQUEST).entity("Query parameter 'page' must be positive.\n").build();
+        }
+        if (limit < 1 || limit > MAX_QUERY_LIMIT) {
+            return Response.status(BAD_REQUEST).entity("Query parameter 'limit' must be between 1 and " + MAX_QUERY_LIMIT + ".\n").build();
+        }
+
+        final QueryCriteria criteria = byLinearId(id, Vault.StateStatus.ALL);
+        // The state ref breaks ties, so that pages neither overlap nor skip versions recorded at the same instant.
+        final Sort byRecordedTime = new Sort(ImmutableSet.of(
+                new Sort.SortColumn(new SortAttribute.Standard(Sort.VaultStateAttribute.RECORDED_TIME), Sort.Direction.ASC),
+                new Sort.SortColumn(new SortAttribute.Standard(Sort.CommonStateAttribute.STATE_REF_TXN_ID), Sort.Direction.ASC),
+                new Sort.SortColumn(new SortAttribute.Standard(Sort.CommonStateAttribute.STATE_REF_INDEX), Sort.Direction.ASC)));
+        final Vault.Page<IOUState> results = traced("api.rpc.vaultQuery", () -> rpcOps.vaultQueryBy(
+                criteria, new PageSpecification(page, limit), byRecordedTime, IOUState.class));
+        if (results.getTotalStatesAvailable() == 0) {
+            return Response.status(NOT_FOUND).entity("No IOU with linearId " + id + ".\n").build();
+        }
+        return Response.status(OK).entity(results.getStates()).header("X-Total-Count", results.getTotalStatesAvailable()).build();
+    }
+
+    /**
+     * Checks an IOU proposal as /create-iou would, without starting a flow.
+     *
+     * The IOU is built and run through [IOUProposalValidator], i.e. the [IOUContract] issuance rules and the
+     * borrower's acceptance limit. Returns HTTP 200 if the proposal is valid, or HTTP 400 listing every violation.
+     */
+    @GET
+    @Path("validate-iou")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response validateIOU(@QueryParam("iouValue") int iouValue, @QueryParam("partyName") CordaX500Name partyName) {
+        if (partyName == null) {
+            return Response.status(BAD_REQUEST).entity("Query parameter 'partyName' missing or has wrong format.\n").build();
+        }
+        final Party otherParty = rpcOps.wellKnownPartyFromX500Name(partyName);
+        final List<String> violations = otherParty == null
+                ? ImmutableList.of("Party named " + partyName + " cannot be found.")
+                : IOUProposalValidator.validate(new IOUState(iouValue, me, otherParty, new UniqueIdentifier()));
+        return Response.status(violations.isEmpty() ? OK : BAD_REQUEST)
+                .entity(ImmutableMap.of("valid", violations.isEmpty(), "violations", violations))
+                .build();
     }
 
     /**
@@ -90,10 +325,24 @@ public class ExampleApi {
      * in its network map cache, it will return an HTTP bad request.
      *
      * The flow is invoked asynchronously. It returns a future when the flow's call() method returns.
+     *
+     * An optional 'requestKey' makes the call idempotent: the key becomes the IOU's external id, and a retry with the
+     * same key returns the original transaction id (HTTP 200) instead of issuing a second IOU.
+     *
+     * If batching is enabled, concurrent requests to the same counterparty are coalesced by an [IOUBatcher] into one
+     * [BatchIOUFlow] transaction. Each caller still receives the id of the transaction holding its IOU.
+     *
+     * Each request gets a correlation id from [RequestTracing]. When tracing is enabled, the [TraceRecorder] writes
+     * per-stage timings under that id, including its RPC calls, and the flow is started as an
+     * [ExampleFlow.TracedInitiator] so that both sides of it use the id too. A batched request records its wait for
+     * the batch under its own id.
+     *
+     * Flow starts pass through a [FlowAdmissionControl] queue. If it is full, the request is rejected with HTTP 429
+     * and a Retry-After header instead of starting yet another flow.
      */
     @PUT
     @Path("create-iou")
-    public Response createIOU(@QueryParam("iouValue") int iouValue, @QueryParam("partyName") CordaX500Name partyName) throws InterruptedException, ExecutionException {
+    public Response createIOU(@QueryParam("iouValue") int iouValue, @QueryParam("partyName") CordaX500Name partyName, @QueryParam("requestKey") String requestKey) throws InterruptedException, ExecutionException {
         if (iouValue <= 0) {
             return Response.status(BAD_REQUEST).entity("Query parameter 'iouValue' must be non-negative.\n").build();
         }
@@ -101,25 +350,244 @@ public class ExampleApi {
             return Response.status(BAD_REQUEST).entity("Query parameter 'partyName' missing or has wrong format.\n").build();
         }
 
-        final Party otherParty = rpcOps.wellKnownPartyFromX500Name(partyName);
+        final Party otherParty = traced("api.rpc.wellKnownParty", () -> rpcOps.wellKnownPartyFromX500Name(partyName));
         if (otherParty == null) {
             return Response.status(BAD_REQUEST).entity("Party named " + partyName + "cannot be found.\n").build();
         }
 
+        // Reject proposals that the contract or the borrower would reject, before they cost a flow.
+        final List<String> violations = IOUProposalValidator.validate(new IOUState(iouValue, me, otherParty, new UniqueIdentifier()));
+        if (!violations.isEmpty()) {
+            return Response.status(BAD_REQUEST).entity(String.join("\n", violations) + "\n").build();
+        }
+
+        // The correlation id under which every stage of this request is traced, on this node and the counterparty.
+        final String traceId = TraceRecorder.currentTraceId();
+        final long requestStart = TraceRecorder.now();
+
+        // A retried request joins the in-flight original rather than starting a second flow.
+        final CompletableFuture<SecureHash> outcome = new CompletableFuture<>();
+        final CompletableFuture<SecureHash> original = requestKey == null ? null : inFlightRequests.putIfAbsent(requestKey, outcome);
+
         try {
-            final SignedTransaction signedTx = rpcOps
-                    .startTrackedFlowDynamic(ExampleFlow.Initiator.class, iouValue, otherParty)
-                    .getReturnValue()
-                    .get();
+            if (original != null) {
+                return committed(OK, original.get());
+            }
+            if (requestKey != null) {
+                final SecureHash committedTxId = findIOUTransactionByRequestKey(requestKey);
+                if (committedTxId != null) {
+                    outcome.complete(committedTxId);
+                    return committed(OK, committedTxId);
+                }
+            }
 
-            final String msg = String.format("Transaction id %s committed to ledger.\n", signedTx.getId());
-            return Response.status(CREATED).entity(msg).build();
+            // Concurrent requests for the same borrower may share a single multi-output transaction.
+            final SecureHash txId = batcher.isEnabled()
+                    ? awaitBatch(otherParty, iouValue, requestKey, traceId)
+                    : startIOUFlow(iouValue, otherParty, requestKey, traceId);
+            outcome.complete(txId);
+            return committed(CREATED, txId);
 
         } catch (Throwable ex) {
+            outcome.completeExceptionally(ex);
+            if (ex instanceof RejectedExecutionException || ex.getCause() instanceof RejectedExecutionException) {
+                return Response.status(TOO_MANY_REQUESTS)
+                        .header("Retry-After", admissionControl.retryAfterSeconds())
+                        .entity("Too many IOU flows in progress, please retry later.\n")
+                        .build();
+            }
             final String msg = ex.getMessage();
             logger.error(ex.getMessage(), ex);
             return Response.status(BAD_REQUEST).entity(msg).build();
+        } finally {
+            if (requestKey != null) inFlightRequests.remove(requestKey, outcome);
+            TraceRecorder.record(traceComponent, traceId, "api.createIOU", requestStart);
+        }
+    }
+
+    /**
+     * Starts a single-IOU flow, subject to admission control, and waits for it to finish.
+     */
+    private SecureHash startIOUFlow(int iouValue, Party otherParty, String requestKey, String traceId) throws Exception {
+        // Shed load rather than queueing an unbounded number of flows on the node.
+        final FlowAdmissionControl.Permit permit = admissionControl.tryAdmit(otherParty.getName());
+        if (permit == null) {
+            throw new RejectedExecutionException("Too many IOU flows in progress, please retry later.");
+        }
+        try (FlowAdmissionControl.Permit ignored = permit) {
+            // RPC can't pass a null argument, so each combination has a constructor of its own.
+            final FlowHandle<SignedTransaction> flowHandle;
+            if (TraceRecorder.isEnabled()) {
+                flowHandle = requestKey == null
+                        ? rpcOps.startTrackedFlowDynamic(ExampleFlow.TracedInitiator.class, iouValue, otherParty, traceId)
+                        : rpcOps.startTrackedFlowDynamic(ExampleFlow.TracedInitiator.class, iouValue, otherParty, requestKey, traceId);
+            } else {
+                flowHandle = requestKey == null
+                        ? rpcOps.startTrackedFlowDynamic(ExampleFlow.Initiator.class, iouValue, otherParty)
+                        : rpcOps.startTrackedFlowDynamic(ExampleFlow.Initiator.class, iouValue, otherParty, requestKey);
+            }
+            return flowHandle.getReturnValue().get().getId();
+        }
+    }
+
+    /**
+     * Submits an IOU to the [IOUBatcher] and waits for the batch holding it, recorded as a stage of request [traceId].
+     */
+    private SecureHash awaitBatch(Party otherParty, int iouValue, String requestKey, String traceId) throws Exception {
+        final long start = TraceRecorder.now();
+        try {
+            return batcher.submit(otherParty, iouValue, requestKey).get().getTxhash();
+        } finally {
+            TraceRecorder.record(traceComponent, traceId, "api.batchIOU", start);
+        }
+    }
+
+    /**
+     * Starts one [BatchIOUFlow] for a batch of IOUs coalesced by the [IOUBatcher]. The whole batch takes a single
+     * admission slot.
+     */
+    private SecureHash startBatchFlow(Party otherParty, List<Integer> iouValues, List<String> requestKeys) throws Exception {
+        final FlowAdmissionControl.Permit permit = admissionControl.tryAdmit(otherParty.getName());
+        if (permit == null) {
+            throw new RejectedExecutionException("Too many IOU flows in progress, please retry later.");
+        }
+        try (FlowAdmissionControl.Permit ignored = permit) {
+            return rpcOps.startTrackedFlowDynamic(BatchIOUFlow.Initiator.class, iouValues, otherParty, requestKeys)
+                    .getReturnValue()
+                    .get()
+                    .getId();
+        }
+    }
+
+    private Response committed(Response.Status status, SecureHash txId) {
+        final String msg = String.format("Transaction id %s committed to ledger.\n", txId);
+        return Response.status(status).entity(msg).build();
+    }
+
+    /**
+     * Makes an RPC call, recording its duration as a [TraceRecorder] stage of the request being served.
+     */
+    private <T> T traced(String stage, Supplier<T> call) {
+        final long start = TraceRecorder.now();
+        try {
+            return call.get();
+        } finally {
+            TraceRecorder.record(traceComponent, TraceRecorder.currentTraceId(), stage, start);
+        }
+    }
+
+    /**
+     * Looks up an IOU we issued under [requestKey] using the indexed external id of its [UniqueIdentifier], and
+     * returns the id of the transaction that created it, or null if there is none.
+     */
+    private SecureHash findIOUTransactionByRequestKey(String requestKey) throws NoSuchFieldException {
+        QueryCriteria keyCriteria = new QueryCriteria.LinearStateQueryCriteria(null, null, ImmutableList.of(requestKey), Vault.StateStatus.ALL);
+        Field lender = IOUSchemaV1.PersistentIOU.class.getDeclaredField("lender");
+        QueryCriteria lenderCriteria = new QueryCriteria.VaultCustomQueryCriteria(Builder.equal(lender, myLegalName.toString()));
+        List<StateAndRef<IOUState>> results = traced("api.rpc.vaultQuery",
+                () -> rpcOps.vaultQueryByCriteria(keyCriteria.and(lenderCriteria), IOUState.class)).getStates();
+        return results.isEmpty() ? null : results.get(0).getRef().getTxhash();
+    }
+
+    /**
+     * Displays the state of the create-iou admission queue: in-flight flows, queue depth and wait times.
+     */
+    @GET
+    @Path("admission")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Map<String, Object> getAdmissionStats() {
+        return admissionControl.stats();
+    }
+
+    /**
+     * Displays the number and total value of outstanding IOUs per counterparty, read from the node's pre-aggregated
+     * summary tables rather than the IOU state table.
+     */
+    @GET
+    @Path("summary")
+    @Produces(MediaType.APPLICATION_JSON)
+    public List<IOUSummary> getSummary() throws InterruptedException, ExecutionException {
+        return rpcOps.startFlowDynamic(IOUSummaryFlows.ByCounterparty.class).getReturnValue().get();
+    }
+
+    /**
+     * Displays the number and total value of IOUs recorded per day and counterparty since the given ISO date.
+     */
+    @GET
+    @Path("summary/daily")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response getDailySummary(@QueryParam("since") String since) throws InterruptedException, ExecutionException {
+        final LocalDate sinceDate;
+        try {
+            sinceDate = since == null ? LocalDate.now(ZoneOffset.UTC).minusDays(30) : LocalDate.parse(since);
+        } catch (DateTimeParseException e) {
+            return Response.status(BAD_REQUEST).entity("Query parameter 'since' must be an ISO date, e.g. 2018-01-31.\n").build();
+        }
+        final List<IOUSummary> results = rpcOps.startFlowDynamic(IOUSummaryFlows.ByDay.class, sinceDate).getReturnValue().get();
+        return Response.status(OK).entity(results).build();
+    }
+
+    /**
+     * Returns both the "all" and the "mine" IOU lists in one response, projected onto the requested fields.
+     *
+     * 'fields' is a comma-separated subset of linearId, lender, borrower, counterparty and value, defaulting to all of
+     * them. Each list comes from a group-by query over the [IOUSchemaV1.PersistentIOU] columns, so no [StateAndRef]
+     * objects are loaded or serialised. "all" holds the unconsumed IOUs. "mine" holds the IOUs that we lent, consumed
+     * or not, as /my-ious does; an IOU that was re-issued appears once. Each list holds at most 'limit' (default 200,
+     * at most 1000) rows.
+     */
+    @GET
+    @Path("dashboard")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response getDashboard(@QueryParam("fields") String fields,
+                                 @QueryParam("limit") @DefaultValue("200") int limit) throws NoSuchFieldException {
+        final List<String> projection = fields == null ? DASHBOARD_FIELDS : Splitter.on(',').trimResults().omitEmptyStrings().splitToList(fields);
+        if (projection.isEmpty() || !DASHBOARD_FIELDS.containsAll(projection)) {
+            return Response.status(BAD_REQUEST).entity("Query parameter 'fields' must be a subset of " + DASHBOARD_FIELDS + ".\n").build();
+        }
+        if (limit < 1 || limit > MAX_QUERY_LIMIT) {
+            return Response.status(BAD_REQUEST).entity("Query parameter 'limit' must be between 1 and " + MAX_QUERY_LIMIT + ".\n").build();
+        }
+
+        // Grouping by the row's own columns returns them as plain values alongside the aggregate.
+        final Field value = IOUSchemaV1.PersistentIOU.class.getDeclaredField("value");
+        final Field lender = IOUSchemaV1.PersistentIOU.class.getDeclaredField("lender");
+        final List<Field> columns = ImmutableList.of(
+                IOUSchemaV1.PersistentIOU.class.getDeclaredField("linearId"),
+                lender,
+                IOUSchemaV1.PersistentIOU.class.getDeclaredField("borrower"));
+        final QueryCriteria unconsumed = new QueryCriteria.VaultCustomQueryCriteria(Builder.sum(value, columns));
+        // Every version of a re-issued IOU has the same value, so max() folds them into one row.
+        final QueryCriteria lentByUs = new QueryCriteria.VaultCustomQueryCriteria(Builder.max(value, columns), Vault.StateStatus.ALL)
+                .and(new QueryCriteria.VaultCustomQueryCriteria(Builder.equal(lender, myLegalName.toString()), Vault.StateStatus.ALL));
+        return Response.status(OK).entity(ImmutableMap.of(
+                "all", dashboardRows(unconsumed, projection, limit),
+                "mine", dashboardRows(lentByUs, projection, limit))).build();
+    }
+
+    // Runs a query grouped by linearId, lender and borrower, and projects each row onto [projection].
+    private List<Map<String, Object>> dashboardRows(QueryCriteria criteria, List<String> projection, int limit) {
+        final List<Object> columns = traced("api.rpc.vaultQuery", () -> rpcOps.vaultQueryBy(
+                criteria, new PageSpecification(DEFAULT_PAGE_NUM, limit), new Sort(ImmutableSet.of()), IOUState.class))
+                .getOtherResults();
+        final String me = myLegalName.toString();
+        final List<Map<String, Object>> rows = new ArrayList<>(columns.size() / 4);
+        for (int i = 0; i + 3 < columns.size(); i += 4) {
+            final String rowLender = (String) columns.get(i + 2);
+            final String rowBorrower = (String) columns.get(i + 3);
+            final Map<String, Object> row = new LinkedHashMap<>();
+            for (String field : projection) {
+                switch (field) {
+                    case "value": row.put(field, columns.get(i)); break;
+                    case "linearId": row.put(field, columns.get(i + 1)); break;
+                    case "lender": row.put(field, rowLender); break;
+                    case "borrower": row.put(field, rowBorrower); break;
+                    case "counterparty": row.put(field, me.equals(rowLender) ? rowBorrower : rowLender); break;
+                }
+            }
+            rows.add(row);
         }
+        return rows;
     }
 	
 	/**
@@ -134,7 +602,7 @@ public class ExampleApi {
         CriteriaExpression lenderIndex = Builder.equal(lender, myLegalName.toString());
         QueryCriteria lenderCriteria = new QueryCriteria.VaultCustomQueryCriteria(lenderIndex);
         QueryCriteria criteria = generalCriteria.and(lenderCriteria);
-        List<StateAndRef<IOUState>> results = rpcOps.vaultQueryByCriteria(criteria,IOUState.class).getStates();
+        List<StateAndRef<IOUState>> results = traced("api.rpc.vaultQuery", () -> rpcOps.vaultQueryByCriteria(criteria, IOUState.class)).getStates();
         return Response.status(OK).entity(results).build();
     }
 }
@@ -0,0 +1,166 @@
+package com.example.api;
+
+import com.google.common.collect.ImmutableMap;
+import net.corda.core.identity.CordaX500Name;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded admission queue placed in front of flow starts.
+ *
+ * At most [maxInFlight] flows may be running at once (and, if [maxInFlightPerCounterparty] is positive, at most that
+ * many against any single counterparty). Callers that cannot be admitted immediately wait in a queue of at most
+ * [maxQueueDepth] entries for up to [maxWaitMillis]. Anything beyond that is rejected straight away so that a burst
+ * of requests is shed at the web layer rather than piling checkpoints up in the node's state machine.
+ *
+ * The limits are read from system properties when using [fromSystemProperties]:
+ * - example.admission.maxInFlight (default 32)
+ * - example.admission.maxInFlightPerCounterparty (default 0, i.e. unlimited)
+ * - example.admission.maxQueueDepth (default 64)
+ * - example.admission.maxWaitMillis (default 5000)
+ */
+public class FlowAdmissionControl {
+    private final int maxInFlight;
+    private final int maxInFlightPerCounterparty;
+    private final int maxQueueDepth;
+    private final long maxWaitMillis;
+
+    private final Semaphore globalPermits;
+    private final Map<CordaX500Name, Semaphore> counterpartyPermits = new ConcurrentHashMap<>();
+
+    private final AtomicInteger queueDepth = new AtomicInteger();
+    private final AtomicLong admitted = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong totalWaitNanos = new AtomicLong();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+
+    public FlowAdmissionControl(int maxInFlight, int maxInFlightPerCounterparty, int maxQueueDepth, long maxWaitMillis) {
+        if (maxInFlight <= 0) throw new IllegalArgumentException("maxInFlight must be positive.");
+        if (maxQueueDepth < 0) throw new IllegalArgumentException("maxQueueDepth must not be negative.");
+        this.maxInFlight = maxInFlight;
+        this.maxInFlightPerCounterparty = maxInFlightPerCounterparty;
+        this.maxQueueDepth = maxQueueDepth;
+        this.maxWaitMillis = maxWaitMillis;
+        this.globalPermits = new Semaphore(maxInFlight, true);
+    }
+
+    public static FlowAdmissionControl fromSystemProperties() {
+        return new FlowAdmissionControl(
+                Integer.getInteger("example.admission.maxInFlight", 32),
+                Integer.getInteger("example.admission.maxInFlightPerCounterparty", 0),
+                Integer.getInteger("example.admission.maxQueueDepth", 64),
+                Long.getLong("example.admission.maxWaitMillis", 5000L));
+    }
+
+    /**
+     * Attempts to admit a flow against [counterparty]. Returns a [Permit] that must be closed once the flow has
+     * finished, or null if the request should be shed.
+     */
+    public Permit tryAdmit(CordaX500Name counterparty) throws InterruptedException {
+        // Fast path: free capacity and nobody queued ahead. Timed acquires honour the semaphores' fairness, whereas
+        // the untimed tryAcquire() would barge past callers already waiting.
+        final Semaphore perParty = permitsFor(counterparty);
+        if (acquire(perParty, 0L)) {
+            if (globalPermits.tryAcquire(0L, TimeUnit.NANOSECONDS)) {
+                return admit(perParty, 0L);
+            }
+            release(perParty);
+        }
+
+        // Slow path: join the bounded queue, or shed the request if it is already full.
+        if (queueDepth.incrementAndGet() > maxQueueDepth) {
+            queueDepth.decrementAndGet();
+            rejected.incrementAndGet();
+            return null;
+        }
+        final long start = System.nanoTime();
+        try {
+            final long deadline = start + TimeUnit.MILLISECONDS.toNanos(maxWaitMillis);
+            // The counterparty's own permit is taken first, so a caller queued behind a slow counterparty holds no
+            // global slot while it waits and cannot hold up callers for other counterparties.
+            if (!acquire(perParty, deadline - System.nanoTime())) {
+                rejected.incrementAndGet();
+                return null;
+            }
+            if (!globalPermits.tryAcquire(Math.max(0L, deadline - System.nanoTime()), TimeUnit.NANOSECONDS)) {
+                release(perParty);
+                rejected.incrementAndGet();
+                return null;
+            }
+            return admit(perParty, System.nanoTime() - start);
+        } finally {
+            queueDepth.decrementAndGet();
+        }
+    }
+
+    /**
+     * The number of seconds a rejected client should wait before retrying, for use in a Retry-After header.
+     */
+    public long retryAfterSeconds() {
+        return Math.max(1L, TimeUnit.MILLISECONDS.toSeconds(maxWaitMillis));
+    }
+
+    /**
+     * A snapshot of the admission queue, suitable for serving as JSON.
+     */
+    public Map<String, Object> stats() {
+        final long admittedCount = admitted.get();
+        return ImmutableMap.<String, Object>builder()
+                .put("maxInFlight", maxInFlight)
+                .put("maxInFlightPerCounterparty", maxInFlightPerCounterparty)
+                .put("maxQueueDepth", maxQueueDepth)
+                .put("inFlight", maxInFlight - globalPermits.availablePermits())
+                .put("queueDepth", queueDepth.get())
+                .put("admitted", admittedCount)
+                .put("rejected", rejected.get())
+                .put("meanWaitMillis", admittedCount == 0 ? 0.0 : totalWaitNanos.get() / 1e6 / admittedCount)
+                .put("maxWaitMillis", maxWaitNanos.get() / 1e6)
+                .build();
+    }
+
+    private Semaphore permitsFor(CordaX500Name counterparty) {
+        if (maxInFlightPerCounterparty <= 0) return null;
+        return counterpartyPermits.computeIfAbsent(counterparty, name -> new Semaphore(maxInFlightPerCounterparty, true));
+    }
+
+    // Per-counterparty limits are optional, in which case there is no semaphore to acquire or release.
+    private static boolean acquire(Semaphore perParty, long timeoutNanos) throws InterruptedException {
+        return perParty == null || perParty.tryAcquire(Math.max(0L, timeoutNanos), TimeUnit.NANOSECONDS);
+    }
+
+    private static void release(Semaphore perParty) {
+        if (perParty != null) perParty.release();
+    }
+
+    private Permit admit(Semaphore perParty, long waitNanos) {
+        admitted.incrementAndGet();
+        totalWaitNanos.addAndGet(waitNanos);
+        maxWaitNanos.accumulateAndGet(waitNanos, Math::max);
+        return new Permit(perParty);
+    }
+
+    /**
+     * A slot in the in-flight set. Closing it releases the slot; closing it twice has no further effect.
+     */
+    public class Permit implements AutoCloseable {
+        private final Semaphore perParty;
+        private boolean released = false;
+
+        private Permit(Semaphore perParty) {
+            this.perParty = perParty;
+        }
+
+        @Override
+        public synchronized void close() {
+            if (released) return;
+            released = true;
+            release(perParty);
+            globalPermits.release();
+        }
+    }
+}
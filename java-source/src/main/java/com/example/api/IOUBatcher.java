@@ -0,0 +1,201 @@
+package com.example.api;
+
+import com.example.client.IOUProposalValidator;
+import com.example.state.IOUState;
+import net.corda.core.contracts.StateRef;
+import net.corda.core.contracts.UniqueIdentifier;
+import net.corda.core.crypto.SecureHash;
+import net.corda.core.identity.Party;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static java.util.stream.Collectors.toList;
+
+/**
+ * Coalesces concurrent IOU requests for the same borrower into a single multi-output transaction.
+ *
+ * The first request for a borrower opens a batch. The batch is closed and handed to the [BatchStarter] when it holds
+ * [maxBatchSize] requests or [windowMillis] after it was opened, whichever comes first. Every caller receives the
+ * [StateRef] of its own IOU within the resulting transaction, and the whole batch pays for one flow.
+ *
+ * The borrower accepts or rejects a batch as a whole, so one unacceptable IOU would fail every request in it. Each
+ * request is therefore checked with [IOUProposalValidator] before it joins a batch, and rejected on its own if invalid.
+ *
+ * The window is read from system properties when using [fromSystemProperties]:
+ * - example.batch.maxSize (default 1, i.e. batching disabled)
+ * - example.batch.windowMillis (default 20)
+ *
+ * [close] stops the batcher's threads. Requests still waiting in an open batch, or whose flow is still running, fail.
+ */
+public class IOUBatcher implements AutoCloseable {
+    /**
+     * Runs the flow for one closed batch and returns the id of its transaction. Outputs must appear in request order.
+     */
+    public interface BatchStarter {
+        SecureHash start(Party borrower, List<Integer> iouValues, List<String> externalIds) throws Exception;
+    }
+
+    private static class PendingIOU {
+        private final int value;
+        private final String externalId;
+        private final CompletableFuture<StateRef> result = new CompletableFuture<>();
+
+        private PendingIOU(int value, String externalId) {
+            this.value = value;
+            this.externalId = externalId;
+        }
+    }
+
+    private final int maxBatchSize;
+    private final long windowMillis;
+    private final Party lender;
+    private final BatchStarter starter;
+
+    // Guarded by this.
+    private final Map<Party, List<PendingIOU>> openBatches = new HashMap<>();
+    // Batches whose flow is running, by identity. Guarded by this.
+    private final Set<List<PendingIOU>> running = Collections.newSetFromMap(new IdentityHashMap<>());
+    private boolean closed = false;
+
+    private final ScheduledExecutorService windowTimer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "iou-batch-window");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final ExecutorService flowRunner = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "iou-batch-flow");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * @param lender the party issuing every IOU, i.e. our own node.
+     */
+    public IOUBatcher(int maxBatchSize, long windowMillis, Party lender, BatchStarter starter) {
+        if (maxBatchSize <= 0) throw new IllegalArgumentException("maxBatchSize must be positive.");
+        this.maxBatchSize = maxBatchSize;
+        this.windowMillis = windowMillis;
+        this.lender = lender;
+        this.starter = starter;
+    }
+
+    public static IOUBatcher fromSystemProperties(Party lender, BatchStarter starter) {
+        return new IOUBatcher(
+                Integer.getInteger("example.batch.maxSize", 1),
+                Long.getLong("example.batch.windowMillis", 20L),
+                lender,
+                starter);
+    }
+
+    /**
+     * Batching only pays off when more than one request may share a transaction.
+     */
+    public boolean isEnabled() {
+        return maxBatchSize > 1;
+    }
+
+    /**
+     * Adds an IOU to the open batch for [borrower], opening a new batch if there is none. An IOU that fails
+     * [IOUProposalValidator] joins no batch, and its future fails with an [IllegalArgumentException] at once.
+     */
+    public CompletableFuture<StateRef> submit(Party borrower, int value, String externalId) {
+        final PendingIOU pending = new PendingIOU(value, externalId);
+        final List<String> violations = IOUProposalValidator.validate(new IOUState(value, lender, borrower, new UniqueIdentifier(externalId)));
+        if (!violations.isEmpty()) {
+            pending.result.completeExceptionally(new IllegalArgumentException(String.join(" ", violations)));
+            return pending.result;
+        }
+        List<PendingIOU> full = null;
+        synchronized (this) {
+            if (closed) {
+                pending.result.completeExceptionally(new IllegalStateException("The IOU batcher has been closed."));
+                return pending.result;
+            }
+            List<PendingIOU> batch = openBatches.get(borrower);
+            if (batch == null) {
+                final List<PendingIOU> opened = new ArrayList<>();
+                openBatches.put(borrower, opened);
+                windowTimer.schedule(() -> closeWindow(borrower, opened), windowMillis, TimeUnit.MILLISECONDS);
+                batch = opened;
+            }
+            batch.add(pending);
+            if (batch.size() >= maxBatchSize) {
+                openBatches.remove(borrower);
+                full = batch;
+            }
+        }
+        if (full != null) dispatch(borrower, full);
+        return pending.result;
+    }
+
+    private void closeWindow(Party borrower, List<PendingIOU> batch) {
+        synchronized (this) {
+            // The batch may already have been dispatched because it filled up.
+            if (!openBatches.remove(borrower, batch)) return;
+        }
+        dispatch(borrower, batch);
+    }
+
+    /**
+     * Stops the batcher. Open batches are not dispatched, and the threads running flows for dispatched batches are
+     * interrupted, so every request that has not yet completed fails.
+     */
+    @Override
+    public void close() {
+        final List<PendingIOU> abandoned = new ArrayList<>();
+        synchronized (this) {
+            if (closed) return;
+            closed = true;
+            openBatches.values().forEach(abandoned::addAll);
+            openBatches.clear();
+            // A flow that ignores the interrupt may still finish, but its callers will not wait for it.
+            running.forEach(abandoned::addAll);
+        }
+        windowTimer.shutdownNow();
+        flowRunner.shutdownNow();
+        final IllegalStateException ex = new IllegalStateException("The IOU batcher has been closed.");
+        abandoned.forEach(pending -> pending.result.completeExceptionally(ex));
+    }
+
+    private void dispatch(Party borrower, List<PendingIOU> batch) {
+        try {
+            flowRunner.execute(() -> run(borrower, batch));
+        } catch (RejectedExecutionException ex) {
+            // Closed since the batch was taken.
+            batch.forEach(pending -> pending.result.completeExceptionally(new IllegalStateException("The IOU batcher has been closed.", ex)));
+        }
+    }
+
+    private void run(Party borrower, List<PendingIOU> batch) {
+        synchronized (this) {
+            running.add(batch);
+        }
+        try {
+            final SecureHash txId = starter.start(
+                    borrower,
+                    batch.stream().map(pending -> pending.value).collect(toList()),
+                    batch.stream().map(pending -> pending.externalId).collect(toList()));
+            for (int i = 0; i < batch.size(); i++) {
+                batch.get(i).result.complete(new StateRef(txId, i));
+            }
+        } catch (Throwable ex) {
+            batch.forEach(pending -> pending.result.completeExceptionally(ex));
+        } finally {
+            synchronized (this) {
+                running.remove(batch);
+            }
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package com.example.api;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A small thread-safe least-recently-used cache, used for hot point lookups in the web API.
+ *
+ * A value loaded from the source can be invalidated while it is in flight. To avoid caching it after its
+ * invalidation, read [generation] before loading and store the value with [putIfUnchanged].
+ */
+public class LruCache<K, V> {
+    private final Map<K, V> entries;
+    private long generation;
+
+    public LruCache(int maxEntries) {
+        // An access-ordered LinkedHashMap evicts the least recently read entry first.
+        this.entries = new LinkedHashMap<K, V>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    public synchronized V get(K key) {
+        return entries.get(key);
+    }
+
+    public synchronized void put(K key, V value) {
+        entries.put(key, value);
+    }
+
+    /**
+     * Stores [value] unless an entry was invalidated since [generation] was read.
+     */
+    public synchronized void putIfUnchanged(K key, V value, long generation) {
+        if (generation == this.generation) entries.put(key, value);
+    }
+
+    /**
+     * Counts invalidations, so that a value loaded meanwhile is not cached; see [putIfUnchanged].
+     */
+    public synchronized long generation() {
+        return generation;
+    }
+
+    public synchronized void invalidate(K key) {
+        generation++;
+        entries.remove(key);
+    }
+
+    public synchronized void invalidateAll() {
+        generation++;
+        entries.clear();
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+}
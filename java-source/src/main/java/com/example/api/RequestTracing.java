@@ -0,0 +1,39 @@
+package com.example.api;
+
+import com.example.trace.TraceRecorder;
+
+import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.container.ContainerRequestFilter;
+import javax.ws.rs.container.ContainerResponseContext;
+import javax.ws.rs.container.ContainerResponseFilter;
+import javax.ws.rs.ext.Provider;
+
+/**
+ * Gives each request its correlation id as it arrives.
+ *
+ * The id is the [TraceRecorder.currentTraceId] of the thread running the resource method, so that [ExampleApi]'s
+ * stages are recorded under it. It is also kept as a request property, so that the [SerialisationTimer] can record
+ * the serialisation of the response under the same id after the resource method has returned.
+ *
+ * Registered alongside [ExampleApi] by the [ExamplePlugin]. Jersey applies it to every request the webserver serves.
+ */
+@Provider
+public class RequestTracing implements ContainerRequestFilter, ContainerResponseFilter {
+    /**
+     * The request property holding the request's correlation id.
+     */
+    static final String TRACE_ID = "com.example.traceId";
+
+    @Override
+    public void filter(ContainerRequestContext request) {
+        final String traceId = TraceRecorder.newTraceId();
+        request.setProperty(TRACE_ID, traceId);
+        TraceRecorder.setCurrentTraceId(traceId);
+    }
+
+    // Runs once the resource method has returned, on the same thread, but before the body is written.
+    @Override
+    public void filter(ContainerRequestContext request, ContainerResponseContext response) {
+        TraceRecorder.clearCurrentTraceId();
+    }
+}
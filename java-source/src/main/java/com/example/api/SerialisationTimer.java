@@ -0,0 +1,35 @@
+package com.example.api;
+
+import com.example.trace.TraceRecorder;
+import net.corda.core.messaging.CordaRPCOps;
+
+import javax.ws.rs.ext.Provider;
+import javax.ws.rs.ext.WriterInterceptor;
+import javax.ws.rs.ext.WriterInterceptorContext;
+import java.io.IOException;
+
+/**
+ * Records the time the webserver spends serialising each response body as an "api.serialise" [TraceRecorder] stage,
+ * under the correlation id [RequestTracing] gave the request.
+ *
+ * Registered alongside [ExampleApi] by the [ExamplePlugin]. Jersey applies it to every response the webserver writes.
+ */
+@Provider
+public class SerialisationTimer implements WriterInterceptor {
+    private final String traceComponent;
+
+    public SerialisationTimer(CordaRPCOps rpcOps) {
+        this.traceComponent = "webserver " + rpcOps.nodeInfo().getLegalIdentities().get(0).getName().getOrganisation();
+    }
+
+    @Override
+    public void aroundWriteTo(WriterInterceptorContext context) throws IOException {
+        final long start = TraceRecorder.now();
+        try {
+            context.proceed();
+        } finally {
+            final Object traceId = context.getProperty(RequestTracing.TRACE_ID);
+            TraceRecorder.record(traceComponent, traceId != null ? (String) traceId : TraceRecorder.newTraceId(), "api.serialise", start);
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package com.example.api;
+
+import org.glassfish.jersey.server.spi.Container;
+import org.glassfish.jersey.server.spi.ContainerLifecycleListener;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.ws.rs.ext.Provider;
+import java.util.function.Supplier;
+
+/**
+ * Closes a resource of the Jersey application, e.g. the [ExampleApi], when the application shuts down because the
+ * webserver is stopping.
+ *
+ * Registered alongside [ExampleApi] by the [ExamplePlugin] and the [ApiGateway].
+ */
+@Provider
+public class ShutdownListener implements ContainerLifecycleListener {
+    static private final Logger logger = LoggerFactory.getLogger(ShutdownListener.class);
+
+    private final Supplier<? extends AutoCloseable> resource;
+
+    /**
+     * @param resource supplies the resource to close, or null if there is none, when the application shuts down.
+     */
+    public ShutdownListener(Supplier<? extends AutoCloseable> resource) {
+        this.resource = resource;
+    }
+
+    @Override
+    public void onStartup(Container container) { }
+
+    @Override
+    public void onReload(Container container) { }
+
+    @Override
+    public void onShutdown(Container container) {
+        final AutoCloseable closeable = resource.get();
+        if (closeable == null) return;
+        try {
+            closeable.close();
+        } catch (Exception e) {
+            logger.warn("Failed to close " + closeable, e);
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package com.example.api;
+
+import net.corda.core.messaging.CordaRPCOps;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.container.ContainerRequestFilter;
+import javax.ws.rs.container.ContainerResponseContext;
+import javax.ws.rs.container.ContainerResponseFilter;
+import javax.ws.rs.ext.Provider;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Optionally records every request to the example API, with its timing, so that real traffic can be replayed later
+ * (see TrafficReplay in the integration tests).
+ *
+ * Capture is off unless the example.capture.file system property names the file to write. The file is gzipped text:
+ * a header line "# node <legal name>", then one tab-separated line per request holding its arrival time in
+ * milliseconds since capture started, the method, the path and query under /api, the response status and the
+ * latency in microseconds. Each line is flushed as it is written, so a capture cut short by a crash stays readable.
+ *
+ * Registered alongside [ExampleApi] by the [ExamplePlugin].
+ */
+@Provider
+public class TrafficCapture implements ContainerRequestFilter, ContainerResponseFilter {
+    static private final Logger logger = LoggerFactory.getLogger(TrafficCapture.class);
+    static private final String START_PROPERTY = TrafficCapture.class.getName() + ".start";
+
+    private final Writer capture;
+    private final long captureStartNanos = System.nanoTime();
+
+    public TrafficCapture(CordaRPCOps rpcOps) {
+        this(rpcOps, System.getProperty("example.capture.file"));
+    }
+
+    /**
+     * Captures to [file] instead, or not at all if it is null. Used when one process serves several nodes.
+     */
+    public TrafficCapture(CordaRPCOps rpcOps, String file) {
+        this.capture = file == null ? null : open(Paths.get(file), rpcOps.nodeInfo().getLegalIdentities().get(0).getName().toString());
+    }
+
+    @Override
+    public void filter(ContainerRequestContext request) {
+        if (capture != null) request.setProperty(START_PROPERTY, System.nanoTime());
+    }
+
+    @Override
+    public void filter(ContainerRequestContext request, ContainerResponseContext response) {
+        final Object start = request.getProperty(START_PROPERTY);
+        if (capture == null || start == null) return;
+        final long startNanos = (Long) start;
+        final String path = request.getUriInfo().getRequestUri().getRawPath();
+        final int api = path.indexOf("/api/");
+        if (api < 0) return;
+        final String query = request.getUriInfo().getRequestUri().getRawQuery();
+        final String line = ((startNanos - captureStartNanos) / 1_000_000) + "\t" + request.getMethod() + "\t"
+                + path.substring(api + "/api/".length()) + (query == null ? "" : "?" + query) + "\t"
+                + response.getStatus() + "\t" + ((System.nanoTime() - startNanos) / 1000) + "\n";
+        write(line);
+    }
+
+    private synchronized void write(String line) {
+        try {
+            capture.write(line);
+            capture.flush();
+        } catch (IOException e) {
+            logger.warn("Failed to write to the traffic capture", e);
+        }
+    }
+
+    private static Writer open(Path file, String nodeName) {
+        try {
+            if (file.toAbsolutePath().getParent() != null) Files.createDirectories(file.toAbsolutePath().getParent());
+            // A sync flush makes each flushed line decompressible without closing the stream.
+            final Writer writer = new OutputStreamWriter(
+                    new GZIPOutputStream(Files.newOutputStream(file), true), StandardCharsets.UTF_8);
+            writer.write("# node " + nodeName + "\n");
+            writer.flush();
+            logger.info("Capturing API traffic to {}", file);
+            return writer;
+        } catch (IOException e) {
+            logger.warn("Traffic capture disabled: cannot write to " + file, e);
+            return null;
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package com.example.api;
+
+import com.example.state.IOUState;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import net.corda.core.contracts.StateAndRef;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.ws.rs.core.Response;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Warms up an [ExampleApi] in the background when the webserver starts, then marks it ready (see /ready), so that
+ * the first real requests after a restart don't pay for cold RPC connections, serializer creation, class loading and
+ * interpreted code.
+ *
+ * Each round calls the read endpoints as a client would and serialises their results with the webserver's own
+ * [ObjectMapper], whose serializer cache is then populated. The most recent IOUs are also loaded into the
+ * point-lookup cache. The dashboard, which aggregates the whole vault, is only called in the first round. The summary
+ * endpoints are not called at all, as each call starts a flow on the node. Failed calls are retried until the node
+ * answers or the time allowed runs out, at which point the API is marked ready anyway and a warning logged.
+ *
+ * example.warmup.rounds (default 20) sets the number of rounds. 0 skips warm-up and marks the API ready at once.
+ * example.warmup.timeoutSeconds (default 120) sets the time allowed.
+ */
+public class WebServerWarmup {
+    static private final Logger logger = LoggerFactory.getLogger(WebServerWarmup.class);
+    static private final int CACHED_IOUS = 100;
+    static private final long RETRY_MILLIS = 1000;
+
+    private final ExampleApi api;
+    private final Supplier<ObjectMapper> objectMapper;
+    private final int rounds = Integer.getInteger("example.warmup.rounds", 20);
+    private final long timeoutNanos = TimeUnit.SECONDS.toNanos(Long.getLong("example.warmup.timeoutSeconds", 120));
+
+    public WebServerWarmup(ExampleApi api, Supplier<ObjectMapper> objectMapper) {
+        this.api = api;
+        this.objectMapper = objectMapper;
+    }
+
+    public void start() {
+        final Thread thread = new Thread(this::run, "api-warmup");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private void run() {
+        final long start = System.nanoTime();
+        int round = 0;
+        while (round < rounds) {
+            if (System.nanoTime() - start > timeoutNanos) {
+                api.markReady();
+                logger.warn("API warm-up gave up after {} of {} rounds in {} ms; marked ready anyway",
+                        round, rounds, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+                return;
+            }
+            try {
+                warmUpOnce(round == 0);
+                round++;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                logger.warn("API warm-up call failed, retrying: {}", e.toString());
+                try {
+                    Thread.sleep(RETRY_MILLIS);
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+        api.markReady();
+        logger.info("API warm-up finished after {} rounds in {} ms",
+                rounds, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+    }
+
+    @SuppressWarnings("unchecked")
+    private void warmUpOnce(boolean first) throws Exception {
+        serialise(api::whoami);
+        serialise(api::getPeers);
+        serialise(api::getAdmissionStats);
+        serialise(() -> api.getTopIOUs(50));
+        if (first) serialise(() -> api.getDashboard(null, 200));
+
+        final Object recent = serialise(() -> api.getRecentIOUs(60 * 24, CACHED_IOUS));
+        if (recent instanceof List) {
+            for (StateAndRef<IOUState> iou : (List<StateAndRef<IOUState>>) recent) {
+                serialise(() -> api.getIOU(iou.getState().getData().getLinearId().getId().toString()));
+            }
+        }
+    }
+
+    // Calls an endpoint and serialises its result, returning the entity.
+    private Object serialise(Callable<Object> endpoint) throws Exception {
+        Object result = endpoint.call();
+        if (result instanceof Response) result = ((Response) result).getEntity();
+        final ObjectMapper mapper = objectMapper.get();
+        if (mapper != null && result != null) mapper.writeValueAsBytes(result);
+        return result;
+    }
+}
@@ -0,0 +1,31 @@
+package com.example.client;
+
+import com.example.contract.IOUContract;
+import com.example.flow.ExampleFlow;
+import com.example.state.IOUState;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Checks a proposed IOU against the rules it would meet once a flow is started, without starting one: the
+ * constraints [IOUContract.check] places on an issued IOU and the borrower's acceptance limit in [ExampleFlow.Acceptor].
+ *
+ * It needs no node, so clients can use it to reject a doomed proposal before sending it. The web API runs the same
+ * checks in /validate-iou and before starting a flow in /create-iou.
+ */
+public final class IOUProposalValidator {
+    private IOUProposalValidator() { }
+
+    /**
+     * Returns the reasons the proposed IOU would be rejected, in the words of the contract or flow that would reject
+     * it. An empty list means the proposal is valid.
+     */
+    public static List<String> validate(IOUState proposal) {
+        final List<String> violations = new ArrayList<>(IOUContract.check(proposal));
+        if (proposal.getValue() > ExampleFlow.Acceptor.MAX_ACCEPTED_VALUE) {
+            violations.add("I won't accept IOUs with a value over " + ExampleFlow.Acceptor.MAX_ACCEPTED_VALUE + ".");
+        }
+        return violations;
+    }
+}
@@ -0,0 +1,297 @@
+package com.example.client;
+
+import com.example.state.IOUState;
+import com.google.common.collect.ImmutableSet;
+import net.corda.client.rpc.CordaRPCClient;
+import net.corda.client.rpc.CordaRPCClientConfiguration;
+import net.corda.client.rpc.CordaRPCConnection;
+import net.corda.core.contracts.StateAndRef;
+import net.corda.core.messaging.CordaRPCOps;
+import net.corda.core.node.services.Vault;
+import net.corda.core.node.services.vault.Builder;
+import net.corda.core.node.services.vault.PageSpecification;
+import net.corda.core.node.services.vault.QueryCriteria;
+import net.corda.core.node.services.vault.Sort;
+import net.corda.core.node.services.vault.SortAttribute;
+import net.corda.core.schemas.VaultSchemaV1;
+import net.corda.core.utilities.NetworkHostAndPort;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.lang.reflect.Field;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.UUID;
+
+import static net.corda.core.node.services.vault.QueryCriteriaUtils.DEFAULT_PAGE_NUM;
+
+/**
+ * Reconciles a node's unconsumed IOUs against an external position file in one streaming pass.
+ *
+ * The file is CSV with a header line and the columns linearId, lender, borrower, value, sorted by linearId as a
+ * lower-case string. The vault is paged through in the same order, and the two streams are merge-joined, so memory
+ * use does not grow with the number of positions. Each page starts after the last linearId of the one before (keyset
+ * paging on the text uuid column of vault_linear_states, which Corda indexes), so every query is as cheap as the
+ * first. Every difference is written to the report as CSV:
+ * - missing: in the file but not in the vault;
+ * - extra: in the vault but not in the file;
+ * - mismatched: in both, with a different lender, borrower or value.
+ *
+ * IOUs recorded or consumed while the job runs may be reported as differences. The job is intended to run against a
+ * quiet node.
+ *
+ * Usage: IOUReconciliation <node address> <position file> <report file>
+ * Settings: example.reconciliation.rpcUser and example.reconciliation.rpcPassword (default user1 and test, as in
+ * deployNodes).
+ */
+public class IOUReconciliation {
+    private static final Logger logger = LoggerFactory.getLogger(IOUReconciliation.class);
+    private static final int PAGE_SIZE = 1000;
+
+    /**
+     * One IOU as seen by either side.
+     */
+    public static class Position {
+        public final String linearId;
+        public final String lender;
+        public final String borrower;
+        public final int value;
+
+        public Position(String linearId, String lender, String borrower, int value) {
+            this.linearId = linearId.toLowerCase();
+            this.lender = lender;
+            this.borrower = borrower;
+            this.value = value;
+        }
+
+        boolean agreesWith(Position other) {
+            return lender.equals(other.lender) && borrower.equals(other.borrower) && value == other.value;
+        }
+    }
+
+    /**
+     * The number of positions in each outcome.
+     */
+    public static class Result {
+        public long matched;
+        public long missing;
+        public long extra;
+        public long mismatched;
+
+        @Override
+        public String toString() {
+            return String.format("%d matched, %d missing, %d extra, %d mismatched", matched, missing, extra, mismatched);
+        }
+    }
+
+    /**
+     * Merge-joins two streams of positions sorted by linearId, writing every difference to [report].
+     */
+    public static Result reconcile(Iterator<Position> external, Iterator<Position> vault, Writer report) throws IOException {
+        final Iterator<Position> file = new SortedCheck(external, "position file");
+        final Iterator<Position> node = new SortedCheck(vault, "vault");
+        final Result result = new Result();
+        report.write("outcome,linearId,file lender,file borrower,file value,vault lender,vault borrower,vault value\n");
+
+        Position f = file.hasNext() ? file.next() : null;
+        Position v = node.hasNext() ? node.next() : null;
+        while (f != null || v != null) {
+            final int order = f == null ? 1 : v == null ? -1 : f.linearId.compareTo(v.linearId);
+            if (order < 0) {
+                result.missing++;
+                writeLine(report, "missing", f, null);
+                f = file.hasNext() ? file.next() : null;
+            } else if (order > 0) {
+                result.extra++;
+                writeLine(report, "extra", null, v);
+                v = node.hasNext() ? node.next() : null;
+            } else {
+                if (f.agreesWith(v)) {
+                    result.matched++;
+                } else {
+                    result.mismatched++;
+                    writeLine(report, "mismatched", f, v);
+                }
+                f = file.hasNext() ? file.next() : null;
+                v = node.hasNext() ? node.next() : null;
+            }
+        }
+        report.flush();
+        return result;
+    }
+
+    /**
+     * Reads positions lazily from a CSV file with a header line.
+     */
+    public static Iterator<Position> csvPositions(BufferedReader reader) throws IOException {
+        reader.readLine();
+        return new Iterator<Position>() {
+            private String line = nextLine();
+
+            @Override
+            public boolean hasNext() {
+                return line != null;
+            }
+
+            @Override
+            public Position next() {
+                if (line == null) throw new NoSuchElementException();
+                final List<String> fields = parseLine(line);
+                if (fields.size() != 4) {
+                    throw new IllegalArgumentException("Expected linearId,lender,borrower,value but got: " + line);
+                }
+                line = nextLine();
+                return new Position(fields.get(0), fields.get(1), fields.get(2), Integer.parseInt(fields.get(3).trim()));
+            }
+
+            private String nextLine() {
+                try {
+                    String next = reader.readLine();
+                    while (next != null && next.trim().isEmpty()) next = reader.readLine();
+                    return next;
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        };
+    }
+
+    /**
+     * Pages lazily through the node's unconsumed IOUs in linearId order.
+     */
+    public static Iterator<Position> vaultPositions(CordaRPCOps rpcOps, int pageSize) {
+        final Field uuid;
+        try {
+            uuid = VaultSchemaV1.VaultLinearStates.class.getDeclaredField("uuid");
+        } catch (NoSuchFieldException e) {
+            throw new IllegalStateException(e);
+        }
+        final QueryCriteria unconsumed = new QueryCriteria.VaultQueryCriteria(Vault.StateStatus.UNCONSUMED);
+        final Sort byLinearId = new Sort(ImmutableSet.of(new Sort.SortColumn(
+                new SortAttribute.Standard(Sort.LinearStateAttribute.UUID), Sort.Direction.ASC)));
+        return new Iterator<Position>() {
+            private UUID lastSeen;
+            private boolean lastPage;
+            private Iterator<StateAndRef<IOUState>> page = fetch();
+
+            @Override
+            public boolean hasNext() {
+                if (!page.hasNext() && !lastPage) page = fetch();
+                return page.hasNext();
+            }
+
+            @Override
+            public Position next() {
+                if (!hasNext()) throw new NoSuchElementException();
+                final IOUState iou = page.next().getState().getData();
+                return new Position(iou.getLinearId().getId().toString(),
+                        iou.getLender().getName().toString(), iou.getBorrower().getName().toString(), iou.getValue());
+            }
+
+            // Always the first page of what follows the last linearId seen. A short page is the last.
+            private Iterator<StateAndRef<IOUState>> fetch() {
+                final QueryCriteria criteria = lastSeen == null ? unconsumed
+                        : unconsumed.and(new QueryCriteria.VaultCustomQueryCriteria(Builder.greaterThan(uuid, lastSeen)));
+                final List<StateAndRef<IOUState>> results = rpcOps.vaultQueryBy(
+                        criteria, new PageSpecification(DEFAULT_PAGE_NUM, pageSize), byLinearId, IOUState.class).getStates();
+                lastPage = results.size() < pageSize;
+                if (!results.isEmpty()) lastSeen = results.get(results.size() - 1).getState().getData().getLinearId().getId();
+                return results.iterator();
+            }
+        };
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 3) {
+            throw new IllegalArgumentException("Usage: IOUReconciliation <node address> <position file> <report file>");
+        }
+
+        final NetworkHostAndPort nodeAddress = NetworkHostAndPort.parse(args[0]);
+        final CordaRPCClient client = new CordaRPCClient(nodeAddress, CordaRPCClientConfiguration.DEFAULT);
+        final CordaRPCConnection connection = client.start(
+                System.getProperty("example.reconciliation.rpcUser", "user1"),
+                System.getProperty("example.reconciliation.rpcPassword", "test"));
+        try (BufferedReader positions = Files.newBufferedReader(Paths.get(args[1]), StandardCharsets.UTF_8);
+             Writer report = Files.newBufferedWriter(Paths.get(args[2]), StandardCharsets.UTF_8)) {
+            final Result result = reconcile(csvPositions(positions), vaultPositions(connection.getProxy(), PAGE_SIZE), report);
+            logger.info("Reconciliation complete: {}. Differences written to {}", result, args[2]);
+        } finally {
+            connection.notifyServerAndClose();
+        }
+    }
+
+    private static void writeLine(Writer report, String outcome, Position file, Position vault) throws IOException {
+        final Position either = file != null ? file : vault;
+        report.write(outcome + "," + either.linearId + ","
+                + (file == null ? ",," : quote(file.lender) + "," + quote(file.borrower) + "," + file.value) + ","
+                + (vault == null ? "," : quote(vault.lender) + "," + quote(vault.borrower) + "," + vault.value) + "\n");
+    }
+
+    private static String quote(String field) {
+        return "\"" + field.replace("\"", "\"\"") + "\"";
+    }
+
+    // X.500 names contain commas, so fields may be quoted, with "" standing for a literal quote.
+    private static List<String> parseLine(String line) {
+        final List<String> fields = new ArrayList<>(4);
+        final StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            final char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    field.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        fields.add(field.toString());
+        return fields;
+    }
+
+    /**
+     * A merge-join silently gives wrong answers on unsorted input, so each stream is checked as it is read.
+     */
+    private static class SortedCheck implements Iterator<Position> {
+        private final Iterator<Position> positions;
+        private final String source;
+        private String previous;
+
+        SortedCheck(Iterator<Position> positions, String source) {
+            this.positions = positions;
+            this.source = source;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return positions.hasNext();
+        }
+
+        @Override
+        public Position next() {
+            final Position position = positions.next();
+            if (previous != null && previous.compareTo(position.linearId) >= 0) {
+                throw new IllegalStateException("The " + source + " is not sorted by linearId: " + position.linearId + " follows " + previous);
+            }
+            previous = position.linearId;
+            return position;
+        }
+    }
+}
@@ -4,9 +4,13 @@ import com.example.state.IOUState;
 import net.corda.core.contracts.CommandData;
 import net.corda.core.contracts.CommandWithParties;
 import net.corda.core.contracts.Contract;
+import net.corda.core.contracts.Requirements;
+import net.corda.core.crypto.SecureHash;
 import net.corda.core.identity.AbstractParty;
 import net.corda.core.transactions.LedgerTransaction;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.stream.Collectors;
 
 import static net.corda.core.contracts.ContractsDSL.requireSingleCommand;
@@ -22,6 +26,12 @@ import static net.corda.core.contracts.ContractsDSL.requireThat;
  * - One output state: the new [IOU].
  * - An Create() command with the public keys of both the lender and the borrower.
  *
+ * Several IOUs can instead be issued together with a BatchCreate() command, which takes zero inputs and one or more
+ * [IOU] outputs, each subject to the same constraints.
+ *
+ * To keep backchains short, an IOU can be re-issued: an Exit() transaction consumes it, and a Reissue() transaction
+ * creates an identical IOU with no inputs.
+ *
  * All contracts must sub-class the [Contract] interface.
  */
 public class IOUContract implements Contract {
@@ -33,7 +43,21 @@ public class IOUContract implements Contract {
      */
     @Override
     public void verify(LedgerTransaction tx) {
-        final CommandWithParties<Commands.Create> command = requireSingleCommand(tx.getCommands(), Commands.Create.class);
+        final CommandWithParties<Commands> command = requireSingleCommand(tx.getCommands(), Commands.class);
+        if (command.getValue() instanceof Commands.Create) {
+            verifyCreate(tx, command);
+        } else if (command.getValue() instanceof Commands.BatchCreate) {
+            verifyBatchCreate(tx, command);
+        } else if (command.getValue() instanceof Commands.Exit) {
+            verifyExit(tx, command);
+        } else if (command.getValue() instanceof Commands.Reissue) {
+            verifyReissue(tx, command);
+        } else {
+            throw new IllegalArgumentException("Unrecognised command.");
+        }
+    }
+
+    private void verifyCreate(LedgerTransaction tx, CommandWithParties<Commands> command) {
         requireThat(require -> {
             // Generic constraints around the IOU transaction.
             require.using("No inputs should be consumed when issuing an IOU.",
@@ -41,23 +65,115 @@ public class IOUContract implements Contract {
             require.using("Only one output state should be created.",
                     tx.getOutputs().size() == 1);
             final IOUState out = tx.outputsOfType(IOUState.class).get(0);
-            require.using("The lender and the borrower cannot be the same entity.",
-                    out.getLender() != out.getBorrower());
             require.using("All of the participants must be signers.",
                     command.getSigners().containsAll(out.getParticipants().stream().map(AbstractParty::getOwningKey).collect(Collectors.toList())));
 
             // IOU-specific constraints.
-            require.using("The IOU's value must be non-negative.",
-                    out.getValue() > 0);
+            requireValid(require, out);
+
+            return null;
+        });
+    }
+
+    private void verifyBatchCreate(LedgerTransaction tx, CommandWithParties<Commands> command) {
+        requireThat(require -> {
+            require.using("No inputs should be consumed when issuing IOUs.",
+                    tx.getInputs().isEmpty());
+            require.using("At least one output state should be created.",
+                    !tx.getOutputs().isEmpty());
+            final List<IOUState> outs = tx.outputsOfType(IOUState.class);
+            require.using("All of the outputs must be IOUs.",
+                    outs.size() == tx.getOutputs().size());
+            for (IOUState out : outs) {
+                require.using("All of the participants must be signers.",
+                        command.getSigners().containsAll(out.getParticipants().stream().map(AbstractParty::getOwningKey).collect(Collectors.toList())));
+                requireValid(require, out);
+            }
+            return null;
+        });
+    }
 
+    private void verifyExit(LedgerTransaction tx, CommandWithParties<Commands> command) {
+        requireThat(require -> {
+            require.using("Only one input state should be consumed when exiting an IOU.",
+                    tx.getInputs().size() == 1);
+            require.using("No output states should be created when exiting an IOU.",
+                    tx.getOutputs().isEmpty());
+            final IOUState in = tx.inputsOfType(IOUState.class).get(0);
+            require.using("All of the participants must be signers.",
+                    command.getSigners().containsAll(in.getParticipants().stream().map(AbstractParty::getOwningKey).collect(Collectors.toList())));
             return null;
         });
     }
 
     /**
-     * This contract only implements one command, Create.
+     * A re-issuance is an issuance that starts a fresh backchain. The link to the exited state (same linearId, lender,
+     * borrower and value) cannot be checked here, as the exit transaction is not part of this one; it is checked by
+     * both parties' flows before they sign.
+     */
+    private void verifyReissue(LedgerTransaction tx, CommandWithParties<Commands> command) {
+        requireThat(require -> {
+            require.using("No inputs should be consumed when re-issuing an IOU.",
+                    tx.getInputs().isEmpty());
+            require.using("Only one output state should be created.",
+                    tx.getOutputs().size() == 1);
+            final IOUState out = tx.outputsOfType(IOUState.class).get(0);
+            require.using("All of the participants must be signers.",
+                    command.getSigners().containsAll(out.getParticipants().stream().map(AbstractParty::getOwningKey).collect(Collectors.toList())));
+            requireValid(require, out);
+            return null;
+        });
+    }
+
+    /**
+     * Returns the rules an issued IOU breaks on its own, regardless of the transaction it is in, in the words
+     * [verify] rejects it with. An empty list means the IOU is valid. Clients can use it to check a proposal without
+     * building a transaction, as [IOUProposalValidator] does.
+     */
+    public static List<String> check(IOUState iou) {
+        final List<String> violations = new ArrayList<>();
+        if (iou.getLender().equals(iou.getBorrower())) {
+            violations.add("The lender and the borrower cannot be the same entity.");
+        }
+        if (iou.getValue() <= 0) {
+            violations.add("The IOU's value must be non-negative.");
+        }
+        return violations;
+    }
+
+    private static void requireValid(Requirements require, IOUState out) {
+        for (String violation : check(out)) {
+            require.using(violation, false);
+        }
+    }
+
+    /**
+     * Create issues a single IOU. BatchCreate issues several IOUs in one transaction, e.g. when concurrent requests
+     * have been coalesced by the web layer.
      */
     public interface Commands extends CommandData {
         class Create implements Commands {}
+        class BatchCreate implements Commands {}
+
+        /**
+         * Removes an IOU from the ledger, as the first half of a re-issuance.
+         */
+        class Exit implements Commands {}
+
+        /**
+         * Puts an exited IOU back on the ledger with a fresh backchain, so that new holders do not need to resolve
+         * its whole history. Records the id of the transaction that exited the original.
+         */
+        class Reissue implements Commands {
+            private final SecureHash exitTransactionId;
+
+            public Reissue(SecureHash exitTransactionId) {
+                this.exitTransactionId = exitTransactionId;
+            }
+
+            public SecureHash getExitTransactionId() {
+                return exitTransactionId;
+            }
+        }
     }
 }
\ No newline at end of file
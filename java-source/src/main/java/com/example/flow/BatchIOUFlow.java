@@ -0,0 +1,103 @@
+package com.example.flow;
+
+import co.paralleluniverse.fibers.Suspendable;
+import com.example.contract.IOUContract;
+import com.example.state.IOUState;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import net.corda.core.contracts.Command;
+import net.corda.core.contracts.TransactionState;
+import net.corda.core.contracts.UniqueIdentifier;
+import net.corda.core.flows.*;
+import net.corda.core.identity.Party;
+import net.corda.core.transactions.SignedTransaction;
+import net.corda.core.transactions.TransactionBuilder;
+import net.corda.core.utilities.ProgressTracker;
+
+import java.util.List;
+
+import static com.example.contract.IOUContract.IOU_CONTRACT_ID;
+import static net.corda.core.contracts.ContractsDSL.requireThat;
+
+/**
+ * This flow issues several IOUs from the [Initiator] to the same counterparty in one transaction, so that the group
+ * pays for a single round of signature collection and notarisation.
+ *
+ * Output i of the resulting transaction is the IOU for iouValues[i], with externalIds[i] as its external id.
+ */
+public class BatchIOUFlow {
+    @InitiatingFlow
+    @StartableByRPC
+    public static class Initiator extends FlowLogic<SignedTransaction> {
+
+        private final List<Integer> iouValues;
+        private final Party otherParty;
+        private final List<String> externalIds;
+
+        public Initiator(List<Integer> iouValues, Party otherParty, List<String> externalIds) {
+            if (iouValues.size() != externalIds.size()) {
+                throw new IllegalArgumentException("Each IOU value needs a matching (possibly null) external id.");
+            }
+            this.iouValues = iouValues;
+            this.otherParty = otherParty;
+            this.externalIds = externalIds;
+        }
+
+        @Suspendable
+        @Override
+        public SignedTransaction call() throws FlowException {
+            final Party notary = getServiceHub().getNetworkMapCache().getNotaryIdentities().get(0);
+            final Party me = getOurIdentity();
+
+            final TransactionBuilder txBuilder = new TransactionBuilder(notary)
+                    .addCommand(new Command<>(
+                            new IOUContract.Commands.BatchCreate(),
+                            ImmutableList.of(me.getOwningKey(), otherParty.getOwningKey())));
+            for (int i = 0; i < iouValues.size(); i++) {
+                IOUState iouState = new IOUState(iouValues.get(i), me, otherParty, new UniqueIdentifier(externalIds.get(i)));
+                txBuilder.addOutputState(iouState, IOU_CONTRACT_ID);
+            }
+
+            txBuilder.verify(getServiceHub());
+            final SignedTransaction partSignedTx = getServiceHub().signInitialTransaction(txBuilder);
+
+            FlowSession otherPartySession = initiateFlow(otherParty);
+            final SignedTransaction fullySignedTx = subFlow(
+                    new CollectSignaturesFlow(partSignedTx, ImmutableSet.of(otherPartySession), CollectSignaturesFlow.Companion.tracker()));
+
+            return subFlow(new FinalityFlow(fullySignedTx));
+        }
+    }
+
+    @InitiatedBy(Initiator.class)
+    public static class Acceptor extends FlowLogic<SignedTransaction> {
+
+        private final FlowSession otherPartyFlow;
+
+        public Acceptor(FlowSession otherPartyFlow) {
+            this.otherPartyFlow = otherPartyFlow;
+        }
+
+        @Suspendable
+        @Override
+        public SignedTransaction call() throws FlowException {
+            class SignTxFlow extends SignTransactionFlow {
+                private SignTxFlow(FlowSession otherPartyFlow, ProgressTracker progressTracker) {
+                    super(otherPartyFlow, progressTracker);
+                }
+
+                @Override
+                protected void checkTransaction(SignedTransaction stx) {
+                    requireThat(require -> {
+                        for (TransactionState<?> output : stx.getTx().getOutputs()) {
+                            ExampleFlow.Acceptor.checkProposedIOU(require, output.getData());
+                        }
+                        return null;
+                    });
+                }
+            }
+
+            return subFlow(new SignTxFlow(otherPartyFlow, SignTransactionFlow.Companion.tracker()));
+        }
+    }
+}
@@ -0,0 +1,186 @@
+package com.example.flow;
+
+import co.paralleluniverse.fibers.Suspendable;
+import com.example.service.IOUDigestService;
+import com.example.state.IOUState;
+import net.corda.core.contracts.UniqueIdentifier;
+import net.corda.core.crypto.SecureHash;
+import net.corda.core.flows.*;
+import net.corda.core.identity.Party;
+import net.corda.core.serialization.CordaSerializable;
+import net.corda.core.utilities.UntrustworthyData;
+
+import java.util.*;
+
+import static com.example.service.IOUDigestService.FANOUT;
+
+/**
+ * Checks that we and a counterparty agree on the unconsumed IOUs between us, using the hash trees kept by each
+ * side's [IOUDigestService].
+ *
+ * The sides compare the root, then the 16 branch digests, then the digests of the buckets under differing branches,
+ * and finally the Acceptor sends its IOUs in the differing buckets only. When the vaults agree this takes one round
+ * trip, and three when they do not, however many IOUs there are.
+ *
+ * [Rebuild] recomputes this node's hash trees from the vault.
+ */
+public class DigestReconciliationFlow {
+    /**
+     * The differences found, by linearId. [roundTrips] counts the exchanges it took.
+     */
+    @CordaSerializable
+    public static class Report {
+        private final List<UniqueIdentifier> onlyOurs;
+        private final List<UniqueIdentifier> onlyTheirs;
+        private final List<UniqueIdentifier> differing;
+        private final int roundTrips;
+
+        public Report(List<UniqueIdentifier> onlyOurs, List<UniqueIdentifier> onlyTheirs, List<UniqueIdentifier> differing, int roundTrips) {
+            this.onlyOurs = onlyOurs;
+            this.onlyTheirs = onlyTheirs;
+            this.differing = differing;
+            this.roundTrips = roundTrips;
+        }
+
+        public List<UniqueIdentifier> getOnlyOurs() { return onlyOurs; }
+        public List<UniqueIdentifier> getOnlyTheirs() { return onlyTheirs; }
+        public List<UniqueIdentifier> getDiffering() { return differing; }
+        public int getRoundTrips() { return roundTrips; }
+
+        public boolean isInAgreement() {
+            return onlyOurs.isEmpty() && onlyTheirs.isEmpty() && differing.isEmpty();
+        }
+    }
+
+    @InitiatingFlow
+    @StartableByRPC
+    public static class Initiator extends FlowLogic<Report> {
+        private final Party counterparty;
+
+        public Initiator(Party counterparty) {
+            this.counterparty = counterparty;
+        }
+
+        @Suspendable
+        @Override
+        public Report call() throws FlowException {
+            final IOUDigestService digests = getServiceHub().cordaService(IOUDigestService.class);
+            final FlowSession session = initiateFlow(counterparty);
+
+            // 1. Roots. The Acceptor answers with its branch digests, or an empty list if the roots match.
+            final List<SecureHash> theirBranches = checkSize(
+                    session.sendAndReceive(List.class, digests.root(counterparty)), FANOUT, true);
+            if (theirBranches.isEmpty()) {
+                return new Report(Collections.emptyList(), Collections.emptyList(), Collections.emptyList(), 1);
+            }
+
+            // 2. Branches. The Acceptor answers with the bucket digests under each branch we disagree on.
+            final List<Integer> branches = differingIndices(digests.branches(counterparty), theirBranches);
+            final List<SecureHash> theirBuckets = checkSize(
+                    session.sendAndReceive(List.class, branches), branches.size() * FANOUT, false);
+
+            // 3. Buckets. The Acceptor answers with its IOUs in the buckets we disagree on, and we compare them to ours.
+            final List<SecureHash> ourBuckets = digests.buckets(counterparty, branches);
+            final Set<Integer> buckets = new TreeSet<>();
+            for (int i : differingIndices(ourBuckets, theirBuckets)) {
+                buckets.add(branches.get(i / FANOUT) * FANOUT + i % FANOUT);
+            }
+            final List<IOUState> theirs = session.sendAndReceive(List.class, new ArrayList<>(buckets)).unwrap(states -> {
+                for (Object state : states) {
+                    if (!(state instanceof IOUState)) throw new FlowException("Expected IOUs, got " + state);
+                }
+                return (List<IOUState>) states;
+            });
+            return compare(digests.statesInBuckets(counterparty, buckets), theirs, 3);
+        }
+
+        private static List<SecureHash> checkSize(UntrustworthyData<List> data, int size, boolean emptyAllowed) throws FlowException {
+            return data.unwrap(digests -> {
+                if (digests.size() != size && !(emptyAllowed && digests.isEmpty())) {
+                    throw new FlowException("Expected " + size + " digests but received " + digests.size() + ".");
+                }
+                for (Object digest : digests) {
+                    if (!(digest instanceof SecureHash)) throw new FlowException("Expected digests, got " + digest);
+                }
+                return (List<SecureHash>) digests;
+            });
+        }
+
+        private static Report compare(List<IOUState> ours, List<IOUState> theirs, int roundTrips) {
+            final Map<UniqueIdentifier, IOUState> theirsById = new HashMap<>();
+            theirs.forEach(iou -> theirsById.put(iou.getLinearId(), iou));
+            final List<UniqueIdentifier> onlyOurs = new ArrayList<>();
+            final List<UniqueIdentifier> differing = new ArrayList<>();
+            for (IOUState iou : ours) {
+                final IOUState theirIou = theirsById.remove(iou.getLinearId());
+                if (theirIou == null) {
+                    onlyOurs.add(iou.getLinearId());
+                } else if (!IOUDigestService.hashOf(iou).equals(IOUDigestService.hashOf(theirIou))) {
+                    differing.add(iou.getLinearId());
+                }
+            }
+            return new Report(onlyOurs, new ArrayList<>(theirsById.keySet()), differing, roundTrips);
+        }
+    }
+
+    @InitiatedBy(Initiator.class)
+    public static class Acceptor extends FlowLogic<Void> {
+        private final FlowSession otherPartyFlow;
+
+        public Acceptor(FlowSession otherPartyFlow) {
+            this.otherPartyFlow = otherPartyFlow;
+        }
+
+        @Suspendable
+        @Override
+        public Void call() throws FlowException {
+            final IOUDigestService digests = getServiceHub().cordaService(IOUDigestService.class);
+            final Party counterparty = otherPartyFlow.getCounterparty();
+
+            final SecureHash theirRoot = otherPartyFlow.receive(SecureHash.class).unwrap(root -> root);
+            if (theirRoot.equals(digests.root(counterparty))) {
+                otherPartyFlow.send(Collections.emptyList());
+                return null;
+            }
+            otherPartyFlow.send(digests.branches(counterparty));
+
+            final List<Integer> branches = otherPartyFlow.receive(List.class).unwrap(Acceptor::checkIndices);
+            otherPartyFlow.send(digests.buckets(counterparty, branches));
+
+            final List<Integer> buckets = otherPartyFlow.receive(List.class).unwrap(Acceptor::checkIndices);
+            otherPartyFlow.send(digests.statesInBuckets(counterparty, new HashSet<>(buckets)));
+            return null;
+        }
+
+        private static List<Integer> checkIndices(List indices) throws FlowException {
+            for (Object index : indices) {
+                if (!(index instanceof Integer) || (Integer) index < 0 || (Integer) index >= IOUDigestService.BUCKETS) {
+                    throw new FlowException("Invalid tree index " + index + ".");
+                }
+            }
+            return (List<Integer>) indices;
+        }
+    }
+
+    /**
+     * Discards this node's digests and recomputes them from the vault, e.g. after a suspected divergence between the
+     * digests and the vault itself.
+     */
+    @StartableByRPC
+    public static class Rebuild extends FlowLogic<Void> {
+        @Suspendable
+        @Override
+        public Void call() {
+            getServiceHub().cordaService(IOUDigestService.class).rebuild();
+            return null;
+        }
+    }
+
+    private static List<Integer> differingIndices(List<SecureHash> ours, List<SecureHash> theirs) {
+        final List<Integer> indices = new ArrayList<>();
+        for (int i = 0; i < ours.size(); i++) {
+            if (!ours.get(i).equals(theirs.get(i))) indices.add(i);
+        }
+        return indices;
+    }
+}
@@ -3,10 +3,12 @@ package com.example.flow;
 import co.paralleluniverse.fibers.Suspendable;
 import com.example.contract.IOUContract;
 import com.example.state.IOUState;
+import com.example.trace.TraceRecorder;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
 import net.corda.core.contracts.Command;
 import net.corda.core.contracts.ContractState;
+import net.corda.core.contracts.Requirements;
 import net.corda.core.contracts.UniqueIdentifier;
 import net.corda.core.flows.*;
 import net.corda.core.identity.Party;
@@ -36,6 +38,8 @@ public class ExampleFlow {
 
         private final int iouValue;
         private final Party otherParty;
+        private final String externalId;
+        private final String traceId;
 
         private final Step GENERATING_TRANSACTION = new Step("Generating transaction based on new IOU.");
         private final Step VERIFYING_TRANSACTION = new Step("Verifying contract constraints.");
@@ -65,8 +69,26 @@ public class ExampleFlow {
         );
 
         public Initiator(int iouValue, Party otherParty) {
+            this(iouValue, otherParty, null);
+        }
+
+        /**
+         * @param externalId a client-supplied request key, recorded as the external id of the IOU's [UniqueIdentifier]
+         * so that retried requests can be matched to the IOU they already created.
+         */
+        public Initiator(int iouValue, Party otherParty, String externalId) {
+            this(iouValue, otherParty, externalId, null);
+        }
+
+        /**
+         * @param traceId the correlation id under which this node's [TraceRecorder] records the stages of the flow.
+         * A new one is generated if it is null. Only a [TracedInitiator] shares it with the counterparty.
+         */
+        Initiator(int iouValue, Party otherParty, String externalId, String traceId) {
             this.iouValue = iouValue;
             this.otherParty = otherParty;
+            this.externalId = externalId;
+            this.traceId = traceId != null ? traceId : TraceRecorder.newTraceId();
         }
 
         @Override
@@ -82,45 +104,102 @@ public class ExampleFlow {
         public SignedTransaction call() throws FlowException {
             // Obtain a reference to the notary we want to use.
             final Party notary = getServiceHub().getNetworkMapCache().getNotaryIdentities().get(0);
+            final String component = "node " + getOurIdentity().getName().getOrganisation();
 
             // Stage 1.
             progressTracker.setCurrentStep(GENERATING_TRANSACTION);
+            long stageStart = TraceRecorder.now();
             // Generate an unsigned transaction.
             Party me = getOurIdentity();
-            IOUState iouState = new IOUState(iouValue, me, otherParty, new UniqueIdentifier());
+            IOUState iouState = new IOUState(iouValue, me, otherParty, new UniqueIdentifier(externalId));
             final Command<IOUContract.Commands.Create> txCommand = new Command<>(
                     new IOUContract.Commands.Create(),
                     ImmutableList.of(iouState.getLender().getOwningKey(), iouState.getBorrower().getOwningKey()));
             final TransactionBuilder txBuilder = new TransactionBuilder(notary)
                     .addOutputState(iouState, IOU_CONTRACT_ID)
                     .addCommand(txCommand);
+            TraceRecorder.record(component, traceId, "Initiator.generate", stageStart);
 
             // Stage 2.
             progressTracker.setCurrentStep(VERIFYING_TRANSACTION);
+            stageStart = TraceRecorder.now();
             // Verify that the transaction is valid.
             txBuilder.verify(getServiceHub());
+            TraceRecorder.record(component, traceId, "Initiator.verify", stageStart);
 
             // Stage 3.
             progressTracker.setCurrentStep(SIGNING_TRANSACTION);
+            stageStart = TraceRecorder.now();
             // Sign the transaction.
             final SignedTransaction partSignedTx = getServiceHub().signInitialTransaction(txBuilder);
+            TraceRecorder.record(component, traceId, "Initiator.sign", stageStart);
 
             // Stage 4.
             progressTracker.setCurrentStep(GATHERING_SIGS);
+            stageStart = TraceRecorder.now();
             // Send the state to the counterparty, and receive it back with their signature.
             FlowSession otherPartySession = initiateFlow(otherParty);
+            shareTraceId(otherPartySession, traceId);
             final SignedTransaction fullySignedTx = subFlow(
                     new CollectSignaturesFlow(partSignedTx, ImmutableSet.of(otherPartySession), CollectSignaturesFlow.Companion.tracker()));
+            TraceRecorder.record(component, traceId, "Initiator.collectSignatures", stageStart);
 
             // Stage 5.
             progressTracker.setCurrentStep(FINALISING_TRANSACTION);
+            stageStart = TraceRecorder.now();
             // Notarise and record the transaction in both parties' vaults.
-            return subFlow(new FinalityFlow(fullySignedTx));
+            final SignedTransaction notarisedTx = subFlow(new FinalityFlow(fullySignedTx));
+            TraceRecorder.record(component, traceId, "Initiator.finality", stageStart);
+            return notarisedTx;
+        }
+
+        @Suspendable
+        void shareTraceId(FlowSession otherPartySession, String traceId) throws FlowException {
+        }
+    }
+
+    /**
+     * An [Initiator] for a traced request, which first sends the trace id to the counterparty's [TracedAcceptor], so
+     * that both sides record the request's stages under the same id.
+     *
+     * That costs the counterparty a message and a checkpoint, so it is a flow of its own: untraced requests use the
+     * plain [Initiator], whose exchange with the [Acceptor] is unchanged.
+     */
+    @InitiatingFlow
+    @StartableByRPC
+    public static class TracedInitiator extends Initiator {
+        public TracedInitiator(int iouValue, Party otherParty, String traceId) {
+            super(iouValue, otherParty, null, traceId);
+        }
+
+        /**
+         * @param externalId as for [Initiator].
+         */
+        public TracedInitiator(int iouValue, Party otherParty, String externalId, String traceId) {
+            super(iouValue, otherParty, externalId, traceId);
+        }
+
+        @Suspendable
+        @Override
+        void shareTraceId(FlowSession otherPartySession, String traceId) throws FlowException {
+            otherPartySession.send(traceId);
         }
     }
 
     @InitiatedBy(Initiator.class)
     public static class Acceptor extends FlowLogic<SignedTransaction> {
+        /**
+         * The largest IOU value we agree to borrow. The other IOU acceptors and [IOUProposalValidator] share it.
+         */
+        public static final int MAX_ACCEPTED_VALUE = 100;
+
+        /**
+         * The checks every IOU acceptor makes on a proposed output it is asked to sign as the borrower.
+         */
+        public static void checkProposedIOU(Requirements require, ContractState output) {
+            require.using("This must be an IOU transaction.", output instanceof IOUState);
+            require.using("I won't accept IOUs with a value over " + MAX_ACCEPTED_VALUE + ".", ((IOUState) output).getValue() <= MAX_ACCEPTED_VALUE);
+        }
 
         private final FlowSession otherPartyFlow;
 
@@ -131,6 +210,17 @@ public class ExampleFlow {
         @Suspendable
         @Override
         public SignedTransaction call() throws FlowException {
+            return signProposal(otherPartyFlow, null);
+        }
+
+        /**
+         * Checks and signs the proposal, recording the stages under [traceId], or under the proposal's transaction id
+         * if the request is not traced.
+         */
+        @Suspendable
+        SignedTransaction signProposal(FlowSession otherPartyFlow, String traceId) throws FlowException {
+            final String component = "node " + getOurIdentity().getName().getOrganisation();
+
             class SignTxFlow extends SignTransactionFlow {
                 private SignTxFlow(FlowSession otherPartyFlow, ProgressTracker progressTracker) {
                     super(otherPartyFlow, progressTracker);
@@ -138,17 +228,40 @@ public class ExampleFlow {
 
                 @Override
                 protected void checkTransaction(SignedTransaction stx) {
+                    final long checkStart = TraceRecorder.now();
                     requireThat(require -> {
-                        ContractState output = stx.getTx().getOutputs().get(0).getData();
-                        require.using("This must be an IOU transaction.", output instanceof IOUState);
-                        IOUState iou = (IOUState) output;
-                        require.using("I won't accept IOUs with a value over 100.", iou.getValue() <= 100);
+                        checkProposedIOU(require, stx.getTx().getOutputs().get(0).getData());
                         return null;
                     });
+                    TraceRecorder.record(component, traceId != null ? traceId : stx.getId().toString(), "Acceptor.checkTransaction", checkStart);
                 }
             }
 
-            return subFlow(new SignTxFlow(otherPartyFlow, SignTransactionFlow.Companion.tracker()));
+            // Covers receiving and verifying the proposal, our checks and returning our signature.
+            final long signStart = TraceRecorder.now();
+            final SignedTransaction signedTx = subFlow(new SignTxFlow(otherPartyFlow, SignTransactionFlow.Companion.tracker()));
+            TraceRecorder.record(component, traceId != null ? traceId : signedTx.getId().toString(), "Acceptor.signTransaction", signStart);
+            return signedTx;
+        }
+    }
+
+    /**
+     * The [Acceptor] for a [TracedInitiator], which receives the request's trace id before the proposal.
+     */
+    @InitiatedBy(TracedInitiator.class)
+    public static class TracedAcceptor extends Acceptor {
+        private final FlowSession otherPartyFlow;
+
+        public TracedAcceptor(FlowSession otherPartyFlow) {
+            super(otherPartyFlow);
+            this.otherPartyFlow = otherPartyFlow;
+        }
+
+        @Suspendable
+        @Override
+        public SignedTransaction call() throws FlowException {
+            final String traceId = otherPartyFlow.receive(String.class).unwrap(id -> id);
+            return signProposal(otherPartyFlow, traceId);
         }
     }
 }
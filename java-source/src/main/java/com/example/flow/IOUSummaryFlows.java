@@ -0,0 +1,75 @@
+package com.example.flow;
+
+import co.paralleluniverse.fibers.Suspendable;
+import com.example.service.IOUSummary;
+import com.example.service.IOUSummaryService;
+import net.corda.core.flows.FlowException;
+import net.corda.core.flows.FlowLogic;
+import net.corda.core.flows.StartableByRPC;
+
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * Local, RPC-startable flows that read the pre-aggregated tables kept by the [IOUSummaryService]. None of them talk
+ * to other nodes or touch the iou_states table (except [Rebuild], which is meant to be run once).
+ */
+public class IOUSummaryFlows {
+    @StartableByRPC
+    public static class ByCounterparty extends FlowLogic<List<IOUSummary>> {
+        @Suspendable
+        @Override
+        public List<IOUSummary> call() throws FlowException {
+            try {
+                return current(getServiceHub().cordaService(IOUSummaryService.class)).summaryByCounterparty();
+            } catch (SQLException e) {
+                throw new FlowException("Could not read the IOU summary.", e);
+            }
+        }
+    }
+
+    @StartableByRPC
+    public static class ByDay extends FlowLogic<List<IOUSummary>> {
+        private final LocalDate since;
+
+        public ByDay(LocalDate since) {
+            this.since = since;
+        }
+
+        @Suspendable
+        @Override
+        public List<IOUSummary> call() throws FlowException {
+            try {
+                return current(getServiceHub().cordaService(IOUSummaryService.class)).summaryByDay(since);
+            } catch (SQLException e) {
+                throw new FlowException("Could not read the IOU summary.", e);
+            }
+        }
+    }
+
+    // The summaries can't be trusted once an update has failed to apply, until they are rebuilt.
+    private static IOUSummaryService current(IOUSummaryService summaries) throws FlowException {
+        if (summaries.needsRebuild()) {
+            throw new FlowException("The IOU summary is out of date; start IOUSummaryFlows.Rebuild to recompute it.");
+        }
+        return summaries;
+    }
+
+    /**
+     * Recomputes the summary tables from the vault, e.g. after installing the CorDapp on a node with existing IOUs.
+     */
+    @StartableByRPC
+    public static class Rebuild extends FlowLogic<Void> {
+        @Suspendable
+        @Override
+        public Void call() throws FlowException {
+            try {
+                getServiceHub().cordaService(IOUSummaryService.class).rebuild();
+                return null;
+            } catch (SQLException e) {
+                throw new FlowException("Could not rebuild the IOU summary.", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,157 @@
+package com.example.flow;
+
+import co.paralleluniverse.fibers.Suspendable;
+import com.example.contract.IOUContract;
+import com.example.state.IOUState;
+import net.corda.core.contracts.Command;
+import net.corda.core.contracts.TransactionState;
+import net.corda.core.contracts.UniqueIdentifier;
+import net.corda.core.crypto.TransactionSignature;
+import net.corda.core.flows.*;
+import net.corda.core.identity.Party;
+import net.corda.core.transactions.SignedTransaction;
+import net.corda.core.transactions.TransactionBuilder;
+import net.corda.core.utilities.UntrustworthyData;
+
+import java.security.PublicKey;
+import java.security.SignatureException;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+
+import static com.example.contract.IOUContract.IOU_CONTRACT_ID;
+import static net.corda.core.contracts.ContractsDSL.requireThat;
+
+/**
+ * This flow issues an IOU of the same value to each of several counterparties in a single transaction.
+ *
+ * Rather than running [CollectSignaturesFlow], which asks each counterparty for its signature in turn, the
+ * [Initiator] opens every [FlowSession] up front, sends the proposal to all of them and then waits for all of the
+ * signatures at once with receiveAll(). The wall-clock time of signature collection is therefore bounded by the
+ * slowest counterparty rather than the sum of all of them. The transaction is then notarised and distributed by a
+ * single [FinalityFlow].
+ *
+ * Note that every borrower sees the IOUs issued to the other borrowers, since they share a transaction.
+ */
+public class MultiIssueIOUFlow {
+    @InitiatingFlow
+    @StartableByRPC
+    public static class Initiator extends FlowLogic<SignedTransaction> {
+
+        private final int iouValue;
+        private final List<Party> counterparties;
+
+        public Initiator(int iouValue, List<Party> counterparties) {
+            this.iouValue = iouValue;
+            // Each counterparty gets exactly one IOU and one session.
+            this.counterparties = new ArrayList<>(new LinkedHashSet<>(counterparties));
+        }
+
+        @Suspendable
+        @Override
+        public SignedTransaction call() throws FlowException {
+            final Party notary = getServiceHub().getNetworkMapCache().getNotaryIdentities().get(0);
+            final Party me = getOurIdentity();
+            if (counterparties.isEmpty() || counterparties.contains(me)) {
+                throw new FlowException("IOUs must be issued to at least one counterparty other than ourselves.");
+            }
+
+            // Stage 1: one output per counterparty, all signers on a single command.
+            final List<PublicKey> signers = new ArrayList<>();
+            signers.add(me.getOwningKey());
+            final TransactionBuilder txBuilder = new TransactionBuilder(notary);
+            for (Party counterparty : counterparties) {
+                txBuilder.addOutputState(new IOUState(iouValue, me, counterparty, new UniqueIdentifier()), IOU_CONTRACT_ID);
+                signers.add(counterparty.getOwningKey());
+            }
+            txBuilder.addCommand(new Command<>(new IOUContract.Commands.BatchCreate(), signers));
+
+            // Stage 2: verify and sign.
+            txBuilder.verify(getServiceHub());
+            final SignedTransaction partSignedTx = getServiceHub().signInitialTransaction(txBuilder);
+
+            // Stage 3: open every session and send every proposal before waiting on any reply. The proposal is sent
+            // raw rather than with SendTransactionFlow, which would wait for each counterparty in turn to finish
+            // resolving it. An issuance has no inputs, so there is no backchain to resolve, and the Acceptor checks
+            // our signature and the contract itself.
+            final List<FlowSession> sessions = new ArrayList<>();
+            for (Party counterparty : counterparties) {
+                sessions.add(initiateFlow(counterparty));
+            }
+            for (FlowSession session : sessions) {
+                session.send(partSignedTx);
+            }
+            final List<UntrustworthyData<TransactionSignature>> replies = receiveAll(TransactionSignature.class, sessions);
+
+            SignedTransaction fullySignedTx = partSignedTx;
+            for (int i = 0; i < replies.size(); i++) {
+                final PublicKey expectedKey = counterparties.get(i).getOwningKey();
+                final TransactionSignature signature = replies.get(i).unwrap(sig -> {
+                    if (!sig.getBy().equals(expectedKey)) {
+                        throw new FlowException("Received a signature from an unexpected key.");
+                    }
+                    return sig;
+                });
+                fullySignedTx = fullySignedTx.withAdditionalSignature(signature);
+            }
+            try {
+                fullySignedTx.verifyRequiredSignatures();
+            } catch (SignatureException e) {
+                throw new FlowException("A counterparty returned an invalid signature.", e);
+            }
+
+            // Stage 4: notarise once and record in every participant's vault.
+            return subFlow(new FinalityFlow(fullySignedTx));
+        }
+    }
+
+    @InitiatedBy(Initiator.class)
+    public static class Acceptor extends FlowLogic<Void> {
+
+        private final FlowSession otherPartyFlow;
+
+        public Acceptor(FlowSession otherPartyFlow) {
+            this.otherPartyFlow = otherPartyFlow;
+        }
+
+        @Suspendable
+        @Override
+        public Void call() throws FlowException {
+            final Party me = getOurIdentity();
+            final Party initiator = otherPartyFlow.getCounterparty();
+            final SignedTransaction proposal = otherPartyFlow.receive(SignedTransaction.class).unwrap(stx -> {
+                requireThat(require -> {
+                    require.using("An issuance consumes no inputs.", stx.getTx().getInputs().isEmpty());
+                    require.using("The proposal must have a single BatchCreate command.", stx.getTx().getCommands().size() == 1
+                            && stx.getTx().getCommands().get(0).getValue() instanceof IOUContract.Commands.BatchCreate);
+                    require.using("The proposal must be signed by the initiator.", stx.getSigs().stream()
+                            .anyMatch(sig -> sig.getBy().equals(initiator.getOwningKey())));
+                    boolean borrowing = false;
+                    for (TransactionState<?> output : stx.getTx().getOutputs()) {
+                        require.using("This must be an IOU transaction.", output.getData() instanceof IOUState);
+                        IOUState iou = (IOUState) output.getData();
+                        require.using("The initiator must be the lender of every IOU.", iou.getLender().equals(initiator));
+                        if (iou.getBorrower().equals(me)) {
+                            ExampleFlow.Acceptor.checkProposedIOU(require, iou);
+                            borrowing = true;
+                        }
+                    }
+                    require.using("We must be the borrower of at least one IOU.", borrowing);
+                    return null;
+                });
+                return stx;
+            });
+
+            // There are no inputs, so there is no backchain to resolve; the contract and the signatures present are
+            // checked locally.
+            try {
+                proposal.verify(getServiceHub(), false);
+            } catch (Exception e) {
+                throw new FlowException("The proposed transaction is invalid.", e);
+            }
+
+            otherPartyFlow.send(getServiceHub().createSignature(proposal));
+            return null;
+        }
+    }
+}
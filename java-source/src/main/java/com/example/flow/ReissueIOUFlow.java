@@ -0,0 +1,210 @@
+package com.example.flow;
+
+import co.paralleluniverse.fibers.Suspendable;
+import com.example.contract.IOUContract;
+import com.example.state.IOUState;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import net.corda.core.contracts.*;
+import net.corda.core.crypto.SecureHash;
+import net.corda.core.flows.*;
+import net.corda.core.identity.AbstractParty;
+import net.corda.core.identity.Party;
+import net.corda.core.node.ServiceHub;
+import net.corda.core.node.services.Vault;
+import net.corda.core.node.services.vault.QueryCriteria;
+import net.corda.core.transactions.SignedTransaction;
+import net.corda.core.transactions.TransactionBuilder;
+import net.corda.core.utilities.ProgressTracker;
+
+import java.security.PublicKey;
+import java.util.List;
+
+import static com.example.contract.IOUContract.IOU_CONTRACT_ID;
+import static java.util.stream.Collectors.toList;
+import static net.corda.core.contracts.ContractsDSL.requireThat;
+
+/**
+ * This flow compacts the backchain of a long-lived IOU by exiting it and re-issuing an identical [IOUState] (same
+ * linearId, lender, borrower and value) in a transaction with no inputs. Later holders of the re-issued state only
+ * need to resolve that one transaction.
+ *
+ * Both parties sign both transactions. The exit is notarised first, so the IOU can never exist twice. If the
+ * re-issuance then fails, starting the flow again with the exit transaction's id re-issues the IOU that transaction
+ * consumed; both parties check that the exit is in their own storage and that the IOU has not been re-issued since.
+ *
+ * Version 2 tells the acceptor up front whether the exit is being resumed. Version 1 initiators always exit first.
+ */
+public class ReissueIOUFlow {
+    @InitiatingFlow(version = 2)
+    @StartableByRPC
+    public static class Initiator extends FlowLogic<SignedTransaction> {
+
+        private final UniqueIdentifier linearId;
+        private final SecureHash exitTransactionId;
+
+        public Initiator(UniqueIdentifier linearId) {
+            this.linearId = linearId;
+            this.exitTransactionId = null;
+        }
+
+        /**
+         * Resumes a re-issuance whose exit, [exitTransactionId], was notarised but whose re-issuance did not complete.
+         */
+        public Initiator(SecureHash exitTransactionId) {
+            this.linearId = null;
+            this.exitTransactionId = exitTransactionId;
+        }
+
+        @Suspendable
+        @Override
+        public SignedTransaction call() throws FlowException {
+            final StateAndRef<IOUState> original;
+            if (exitTransactionId == null) {
+                final List<StateAndRef<IOUState>> matches = unconsumed(getServiceHub(), linearId);
+                if (matches.size() != 1) {
+                    throw new FlowException("Expected exactly one unconsumed IOU with linearId " + linearId + ".");
+                }
+                original = matches.get(0);
+            } else {
+                original = exitedIOU(getServiceHub(), exitTransactionId);
+                if (original == null) {
+                    throw new FlowException("Transaction " + exitTransactionId + " is not a recorded IOU exit.");
+                }
+                if (!unconsumed(getServiceHub(), original.getState().getData().getLinearId()).isEmpty()) {
+                    throw new FlowException("The IOU exited by " + exitTransactionId + " has already been re-issued.");
+                }
+            }
+            final IOUState iou = original.getState().getData();
+            final Party notary = original.getState().getNotary();
+            final Party me = getOurIdentity();
+            final Party otherParty = iou.getLender().equals(me) ? iou.getBorrower() : iou.getLender();
+            final List<PublicKey> signers = iou.getParticipants().stream().map(AbstractParty::getOwningKey).collect(toList());
+
+            final FlowSession otherPartySession = initiateFlow(otherParty);
+            otherPartySession.send(exitTransactionId != null);
+
+            // Stage 1: exit the original IOU, unless that was already done.
+            final SecureHash exitId;
+            if (exitTransactionId == null) {
+                final TransactionBuilder exitBuilder = new TransactionBuilder(notary)
+                        .addInputState(original)
+                        .addCommand(new Command<>(new IOUContract.Commands.Exit(), signers));
+                exitBuilder.verify(getServiceHub());
+                exitId = subFlow(new FinalityFlow(collectSignatures(exitBuilder, otherPartySession))).getId();
+            } else {
+                exitId = exitTransactionId;
+            }
+
+            // Stage 2: re-issue it, unchanged, under a fresh chain root.
+            final IOUState reissued = new IOUState(iou.getValue(), iou.getLender(), iou.getBorrower(), iou.getLinearId());
+            final TransactionBuilder reissueBuilder = new TransactionBuilder(notary)
+                    .addOutputState(reissued, IOU_CONTRACT_ID)
+                    .addCommand(new Command<>(new IOUContract.Commands.Reissue(exitId), signers));
+            reissueBuilder.verify(getServiceHub());
+            return subFlow(new FinalityFlow(collectSignatures(reissueBuilder, otherPartySession)));
+        }
+
+        @Suspendable
+        private SignedTransaction collectSignatures(TransactionBuilder txBuilder, FlowSession otherPartySession) throws FlowException {
+            final SignedTransaction partSignedTx = getServiceHub().signInitialTransaction(txBuilder);
+            return subFlow(new CollectSignaturesFlow(partSignedTx, ImmutableSet.of(otherPartySession), CollectSignaturesFlow.Companion.tracker()));
+        }
+    }
+
+    @InitiatedBy(Initiator.class)
+    public static class Acceptor extends FlowLogic<SignedTransaction> {
+
+        private final FlowSession otherPartyFlow;
+
+        public Acceptor(FlowSession otherPartyFlow) {
+            this.otherPartyFlow = otherPartyFlow;
+        }
+
+        @Suspendable
+        @Override
+        public SignedTransaction call() throws FlowException {
+            class SignExitFlow extends SignTransactionFlow {
+                private SignExitFlow(FlowSession otherPartyFlow, ProgressTracker progressTracker) {
+                    super(otherPartyFlow, progressTracker);
+                }
+
+                @Override
+                protected void checkTransaction(SignedTransaction stx) {
+                    requireThat(require -> {
+                        require.using("This must be an IOU exit.", stx.getTx().getCommands().stream()
+                                .allMatch(command -> command.getValue() instanceof IOUContract.Commands.Exit));
+                        return null;
+                    });
+                }
+            }
+
+            final boolean resuming = otherPartyFlow.getCounterpartyFlowInfo().getFlowVersion() >= 2
+                    && otherPartyFlow.receive(Boolean.class).unwrap(flag -> flag);
+            final SecureHash signedExitId;
+            if (resuming) {
+                signedExitId = null;
+            } else {
+                signedExitId = subFlow(new SignExitFlow(otherPartyFlow, SignTransactionFlow.Companion.tracker())).getId();
+                // The re-issuance is checked against the exit, so wait until the exit is in our own storage.
+                waitForLedgerCommit(signedExitId);
+            }
+
+            class SignReissueFlow extends SignTransactionFlow {
+                private SignReissueFlow(FlowSession otherPartyFlow, ProgressTracker progressTracker) {
+                    super(otherPartyFlow, progressTracker);
+                }
+
+                @Override
+                protected void checkTransaction(SignedTransaction stx) {
+                    requireThat(require -> {
+                        final List<Command<?>> commands = stx.getTx().getCommands();
+                        require.using("This must be an IOU re-issuance.", commands.size() == 1
+                                && commands.get(0).getValue() instanceof IOUContract.Commands.Reissue);
+                        final IOUContract.Commands.Reissue reissue = (IOUContract.Commands.Reissue) commands.get(0).getValue();
+                        final SecureHash exitId = reissue.getExitTransactionId();
+                        require.using("The re-issuance must follow the exit we signed.",
+                                signedExitId == null || exitId.equals(signedExitId));
+                        final StateAndRef<IOUState> exitedRef = exitedIOU(getServiceHub(), exitId);
+                        require.using("The re-issuance must follow a recorded IOU exit.", exitedRef != null);
+                        final IOUState exited = exitedRef.getState().getData();
+                        require.using("The IOU must not have been re-issued already.",
+                                unconsumed(getServiceHub(), exited.getLinearId()).isEmpty());
+                        final IOUState out = (IOUState) stx.getTx().getOutputs().get(0).getData();
+                        require.using("The re-issued IOU must be identical to the exited one.",
+                                out.getLinearId().equals(exited.getLinearId())
+                                        && out.getValue().equals(exited.getValue())
+                                        && out.getLender().equals(exited.getLender())
+                                        && out.getBorrower().equals(exited.getBorrower()));
+                        return null;
+                    });
+                }
+            }
+
+            return subFlow(new SignReissueFlow(otherPartyFlow, SignTransactionFlow.Companion.tracker()));
+        }
+    }
+
+    private static List<StateAndRef<IOUState>> unconsumed(ServiceHub serviceHub, UniqueIdentifier linearId) {
+        final QueryCriteria criteria = new QueryCriteria.LinearStateQueryCriteria(
+                null, ImmutableList.of(linearId.getId()), null, Vault.StateStatus.UNCONSUMED);
+        return serviceHub.getVaultService().queryBy(IOUState.class, criteria).getStates();
+    }
+
+    // The IOU consumed by [exitTransactionId], or null if that is not an IOU exit in this node's storage.
+    private static StateAndRef<IOUState> exitedIOU(ServiceHub serviceHub, SecureHash exitTransactionId) {
+        final SignedTransaction exitTx = serviceHub.getValidatedTransactions().getTransaction(exitTransactionId);
+        if (exitTx == null || exitTx.getTx().getInputs().size() != 1 || !exitTx.getTx().getCommands().stream()
+                .allMatch(command -> command.getValue() instanceof IOUContract.Commands.Exit)) {
+            return null;
+        }
+        try {
+            final StateAndRef<ContractState> input = serviceHub.toStateAndRef(exitTx.getTx().getInputs().get(0));
+            if (!(input.getState().getData() instanceof IOUState)) return null;
+            @SuppressWarnings("unchecked") final StateAndRef<IOUState> iou = (StateAndRef<IOUState>) (StateAndRef<?>) input;
+            return iou;
+        } catch (TransactionResolutionException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package com.example.gateway;
+
+import com.example.api.ExampleApi;
+import com.example.api.RequestTracing;
+import com.example.api.SerialisationTimer;
+import com.example.api.ShutdownListener;
+import com.example.api.TrafficCapture;
+import com.example.api.WebServerWarmup;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import net.corda.client.jackson.JacksonSupport;
+import net.corda.core.identity.CordaX500Name;
+import net.corda.core.messaging.CordaRPCOps;
+import net.corda.core.utilities.NetworkHostAndPort;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.servlet.ServletContextHandler;
+import org.eclipse.jetty.servlet.ServletHolder;
+import org.glassfish.jersey.jackson.JacksonFeature;
+import org.glassfish.jersey.server.ResourceConfig;
+import org.glassfish.jersey.servlet.ServletContainer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.ws.rs.ext.ContextResolver;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Serves the example API for several nodes from one web process, in place of one corda-webserver per node.
+ *
+ * Each node gets its own [RpcConnectionPool], its own [ExampleApi] with its caches, admission control and batcher,
+ * and its own Jersey application and JSON mapper. Nothing is shared between nodes except Jetty. Requests are routed
+ * by the node's organisation name: /nodes/PartyA/api/example/... is what PartyA's webserver serves at
+ * /api/example/..., and the two are otherwise identical. The static web pages are not served.
+ *
+ * With example.capture.file set, each node's traffic is captured to that file with the organisation appended, e.g.
+ * capture.gz.PartyA, so that every capture can be replayed on its own.
+ *
+ * Usage: ApiGateway <web port> <node RPC address>...
+ * Settings: example.gateway.rpcPoolSize (default 4 connections per node), example.gateway.rpcUser and
+ * example.gateway.rpcPassword (default user1 and test, as in deployNodes).
+ */
+public class ApiGateway {
+    private static final Logger logger = LoggerFactory.getLogger(ApiGateway.class);
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            throw new IllegalArgumentException("Usage: ApiGateway <web port> <node RPC address>...");
+        }
+        final int port = Integer.parseInt(args[0]);
+        final int poolSize = Integer.getInteger("example.gateway.rpcPoolSize", 4);
+        final String username = System.getProperty("example.gateway.rpcUser", "user1");
+        final String password = System.getProperty("example.gateway.rpcPassword", "test");
+        final String captureFile = System.getProperty("example.capture.file");
+
+        final List<RpcConnectionPool> pools = new ArrayList<>();
+        final Set<String> routes = new HashSet<>();
+        final ServletContextHandler context = new ServletContextHandler();
+        context.setContextPath("/");
+        try {
+            for (int i = 1; i < args.length; i++) {
+                final RpcConnectionPool pool = RpcConnectionPool.open(NetworkHostAndPort.parse(args[i]), username, password, poolSize);
+                pools.add(pool);
+                final CordaRPCOps rpcOps = pool.getProxy();
+                final CordaX500Name name = rpcOps.nodeInfo().getLegalIdentities().get(0).getName();
+                final String route = name.getOrganisation();
+                if (!routes.add(route)) {
+                    throw new IllegalArgumentException("Two nodes share the organisation name " + route);
+                }
+                final String capture = captureFile == null ? null : captureFile + "." + route;
+                context.addServlet(new ServletHolder(new ServletContainer(application(rpcOps, capture))), "/nodes/" + route + "/api/*");
+                logger.info("Serving {} at /nodes/{}/api/example over {} RPC connections to {}", name, route, poolSize, args[i]);
+            }
+        } catch (RuntimeException e) {
+            pools.forEach(RpcConnectionPool::close);
+            throw e;
+        }
+
+        final Server server = new Server(port);
+        server.setHandler(context);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                server.stop();
+            } catch (Exception e) {
+                logger.warn("Failed to stop the gateway's web server", e);
+            }
+            pools.forEach(RpcConnectionPool::close);
+        }, "api-gateway-shutdown"));
+        server.start();
+        logger.info("API gateway listening on port {}", port);
+        server.join();
+    }
+
+    // The same API and providers that [ExamplePlugin] gives the node's own webserver.
+    private static ResourceConfig application(CordaRPCOps rpcOps, String captureFile) {
+        final ObjectMapper objectMapper = JacksonSupport.createDefaultMapper(rpcOps);
+        final ExampleApi api = new ExampleApi(rpcOps);
+        new WebServerWarmup(api, () -> objectMapper).start();
+        return new ResourceConfig()
+                .register(JacksonFeature.class)
+                .register(new ContextResolver<ObjectMapper>() {
+                    @Override
+                    public ObjectMapper getContext(Class<?> type) { return objectMapper; }
+                })
+                .register(api)
+                .register(new ShutdownListener(() -> api))
+                .register(new RequestTracing())
+                .register(new SerialisationTimer(rpcOps))
+                .register(new TrafficCapture(rpcOps, captureFile));
+    }
+}
@@ -0,0 +1,79 @@
+package com.example.gateway;
+
+import com.google.common.collect.ImmutableList;
+import net.corda.client.rpc.CordaRPCClient;
+import net.corda.client.rpc.CordaRPCClientConfiguration;
+import net.corda.client.rpc.CordaRPCConnection;
+import net.corda.core.messaging.CordaRPCOps;
+import net.corda.core.utilities.NetworkHostAndPort;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A fixed set of RPC connections to one node, presented as a single [CordaRPCOps].
+ *
+ * Each call on [getProxy] goes to the next connection in turn, so concurrent requests are spread over several
+ * connections rather than queueing behind one. Feeds such as vaultTrackBy stay on the connection that opened them.
+ * Connections are opened once, up front, and are not reopened if the node restarts.
+ */
+public class RpcConnectionPool implements AutoCloseable {
+    private final List<CordaRPCOps> proxies;
+    private final List<CordaRPCConnection> connections;
+    private final AtomicInteger next = new AtomicInteger();
+    private final CordaRPCOps proxy;
+
+    RpcConnectionPool(List<CordaRPCOps> proxies, List<CordaRPCConnection> connections) {
+        if (proxies.isEmpty()) throw new IllegalArgumentException("An RPC connection pool needs at least one connection");
+        this.proxies = ImmutableList.copyOf(proxies);
+        this.connections = ImmutableList.copyOf(connections);
+        this.proxy = (CordaRPCOps) Proxy.newProxyInstance(
+                CordaRPCOps.class.getClassLoader(), new Class<?>[]{CordaRPCOps.class}, (target, method, args) -> invoke(method, args));
+    }
+
+    /**
+     * Opens [size] connections to the node at [address].
+     */
+    public static RpcConnectionPool open(NetworkHostAndPort address, String username, String password, int size) {
+        final CordaRPCClient client = new CordaRPCClient(address, CordaRPCClientConfiguration.DEFAULT);
+        final List<CordaRPCConnection> connections = new ArrayList<>(size);
+        try {
+            for (int i = 0; i < size; i++) connections.add(client.start(username, password));
+        } catch (RuntimeException e) {
+            connections.forEach(CordaRPCConnection::close);
+            throw e;
+        }
+        final List<CordaRPCOps> proxies = new ArrayList<>(size);
+        for (CordaRPCConnection connection : connections) proxies.add(connection.getProxy());
+        return new RpcConnectionPool(proxies, connections);
+    }
+
+    public CordaRPCOps getProxy() { return proxy; }
+
+    public int size() { return proxies.size(); }
+
+    private Object invoke(Method method, Object[] args) throws Throwable {
+        if (method.getDeclaringClass() == Object.class) {
+            switch (method.getName()) {
+                case "equals": return proxy == args[0];
+                case "hashCode": return System.identityHashCode(proxy);
+                default: return "RpcConnectionPool(" + proxies.size() + " connections)";
+            }
+        }
+        final CordaRPCOps target = proxies.get(Math.floorMod(next.getAndIncrement(), proxies.size()));
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    @Override
+    public void close() {
+        connections.forEach(CordaRPCConnection::notifyServerAndClose);
+    }
+}
@@ -1,6 +1,11 @@
 package com.example.plugin;
 
 import com.example.api.ExampleApi;
+import com.example.api.RequestTracing;
+import com.example.api.SerialisationTimer;
+import com.example.api.ShutdownListener;
+import com.example.api.TrafficCapture;
+import com.example.api.WebServerWarmup;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
@@ -13,9 +18,21 @@ import java.util.function.Function;
 
 public class ExamplePlugin implements WebServerPluginRegistry {
     /**
-     * A list of classes that expose web APIs.
+     * The API created by [startExampleApi], closed by its [ShutdownListener] when the webserver stops.
      */
-    private final List<Function<CordaRPCOps, ?>> webApis = ImmutableList.of(ExampleApi::new);
+    private volatile ExampleApi exampleApi;
+
+    /**
+     * A list of classes that expose web APIs, and the JAX-RS providers they use.
+     */
+    private final List<Function<CordaRPCOps, ?>> webApis = ImmutableList.of(
+            this::startExampleApi, rpcOps -> new ShutdownListener(() -> exampleApi), rpcOps -> new RequestTracing(),
+            SerialisationTimer::new, TrafficCapture::new);
+
+    /**
+     * The webserver's JSON mapper, handed to us in [customizeJSONSerialization] and used to warm up its serializers.
+     */
+    private volatile ObjectMapper objectMapper;
 
     /**
      * A list of directories in the resources directory that will be served by Jetty under /web.
@@ -27,5 +44,15 @@ public class ExamplePlugin implements WebServerPluginRegistry {
 
     @Override public List<Function<CordaRPCOps, ?>> getWebApis() { return webApis; }
     @Override public Map<String, String> getStaticServeDirs() { return staticServeDirs; }
-    @Override public void customizeJSONSerialization(ObjectMapper objectMapper) { }
+    @Override public void customizeJSONSerialization(ObjectMapper objectMapper) { this.objectMapper = objectMapper; }
+
+    /**
+     * Creates the API and warms it up in the background. It reports itself ready at /api/example/ready once done.
+     */
+    private ExampleApi startExampleApi(CordaRPCOps rpcOps) {
+        final ExampleApi api = new ExampleApi(rpcOps);
+        new WebServerWarmup(api, () -> objectMapper).start();
+        exampleApi = api;
+        return api;
+    }
 }
\ No newline at end of file
@@ -6,6 +6,7 @@ import net.corda.core.schemas.PersistentState;
 
 import javax.persistence.Column;
 import javax.persistence.Entity;
+import javax.persistence.Index;
 import javax.persistence.Table;
 import java.util.UUID;
 
@@ -18,7 +19,7 @@ public class IOUSchemaV1 extends MappedSchema {
     }
 
     @Entity
-    @Table(name = "iou_states")
+    @Table(name = "iou_states", indexes = @Index(name = "iou_linear_id_idx", columnList = "linear_id"))
     public static class PersistentIOU extends PersistentState {
         @Column(name = "lender") private final String lender;
         @Column(name = "borrower") private final String borrower;
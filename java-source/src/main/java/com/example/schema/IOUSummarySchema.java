@@ -0,0 +1,6 @@
+package com.example.schema;
+
+/**
+ * The family of schemas for the IOU summary tables.
+ */
+public class IOUSummarySchema { }
\ No newline at end of file
@@ -0,0 +1,65 @@
+package com.example.schema;
+
+import com.google.common.collect.ImmutableList;
+import net.corda.core.schemas.MappedSchema;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Table;
+import java.time.LocalDate;
+
+/**
+ * The pre-aggregated IOU summary tables maintained by the IOUSummaryService. They are declared here so that the node
+ * creates them along with the rest of the CorDapp's schemas; the service itself only reads and writes rows.
+ */
+public class IOUSummarySchemaV1 extends MappedSchema {
+    public IOUSummarySchemaV1() {
+        super(IOUSummarySchema.class, 1, ImmutableList.of(PersistentCounterpartySummary.class, PersistentDailySummary.class));
+    }
+
+    @Entity
+    @Table(name = "iou_summary_by_counterparty")
+    public static class PersistentCounterpartySummary {
+        @Id @Column(name = "counterparty") private final String counterparty;
+        @Column(name = "iou_count") private final long iouCount;
+        @Column(name = "total_value") private final long totalValue;
+
+        // Default constructor required by hibernate.
+        public PersistentCounterpartySummary() {
+            this.counterparty = null;
+            this.iouCount = 0;
+            this.totalValue = 0;
+        }
+
+        public String getCounterparty() { return counterparty; }
+        public long getIouCount() { return iouCount; }
+        public long getTotalValue() { return totalValue; }
+    }
+
+    @Entity
+    @Table(name = "iou_summary_by_day")
+    public static class PersistentDailySummary {
+        // The day and counterparty joined as "yyyy-MM-dd/counterparty".
+        @Id @Column(name = "summary_key") private final String summaryKey;
+        @Column(name = "day") private final LocalDate day;
+        @Column(name = "counterparty") private final String counterparty;
+        @Column(name = "iou_count") private final long iouCount;
+        @Column(name = "total_value") private final long totalValue;
+
+        // Default constructor required by hibernate.
+        public PersistentDailySummary() {
+            this.summaryKey = null;
+            this.day = null;
+            this.counterparty = null;
+            this.iouCount = 0;
+            this.totalValue = 0;
+        }
+
+        public String getSummaryKey() { return summaryKey; }
+        public LocalDate getDay() { return day; }
+        public String getCounterparty() { return counterparty; }
+        public long getIouCount() { return iouCount; }
+        public long getTotalValue() { return totalValue; }
+    }
+}
@@ -0,0 +1,230 @@
+package com.example.service;
+
+import com.example.schema.IOUSchemaV1;
+import com.example.state.IOUState;
+import com.google.common.collect.ImmutableSet;
+import net.corda.core.contracts.ContractState;
+import net.corda.core.contracts.StateAndRef;
+import net.corda.core.contracts.StateRef;
+import net.corda.core.contracts.UniqueIdentifier;
+import net.corda.core.crypto.SecureHash;
+import net.corda.core.identity.Party;
+import net.corda.core.node.AppServiceHub;
+import net.corda.core.node.services.CordaService;
+import net.corda.core.node.services.Vault;
+import net.corda.core.node.services.vault.Builder;
+import net.corda.core.node.services.vault.PageSpecification;
+import net.corda.core.node.services.vault.QueryCriteria;
+import net.corda.core.node.services.vault.Sort;
+import net.corda.core.serialization.SingletonSerializeAsToken;
+
+import java.nio.ByteBuffer;
+import java.util.*;
+
+import static net.corda.core.node.services.vault.QueryCriteriaUtils.DEFAULT_PAGE_NUM;
+import static net.corda.core.node.services.vault.QueryCriteriaUtils.DEFAULT_PAGE_SIZE;
+
+/**
+ * Keeps, for each counterparty, a hash tree over the unconsumed IOUs we share with it, so that two nodes can check
+ * that their vaults agree by exchanging digests rather than states.
+ *
+ * IOUs are split into 256 buckets by the first two hex digits of their linearId. A bucket's digest is the XOR of the
+ * SHA-256 hashes of its IOUs (linearId, lender, borrower and value), so an IOU can be added or removed without
+ * rehashing the rest of the bucket. Above the buckets, 16 branch digests each hash 16 buckets, and the root hashes
+ * the 16 branches.
+ *
+ * The buckets are built from the vault on first use and then kept up to date from committed vault updates. Updates
+ * that arrive while a build is querying the vault are held back and applied to its results before they are hashed,
+ * so an IOU committed during the build is counted once, and one consumed during it not at all. [rebuild] (run by
+ * DigestReconciliationFlow.Rebuild) starts again from the vault.
+ */
+@CordaService
+public class IOUDigestService extends SingletonSerializeAsToken {
+    public static final int FANOUT = 16;
+    public static final int BUCKETS = FANOUT * FANOUT;
+
+    private final AppServiceHub serviceHub;
+    private final Party me;
+    private final Map<Party, byte[][]> bucketsByCounterparty = new HashMap<>();
+    private final Object rebuildLock = new Object();
+    private boolean built = false;
+    // Non-null while a build is querying the vault. Guarded by this.
+    private List<Vault.Update<ContractState>> pending = null;
+
+    public IOUDigestService(AppServiceHub serviceHub) {
+        this.serviceHub = serviceHub;
+        this.me = serviceHub.getMyInfo().getLegalIdentities().get(0);
+        serviceHub.getVaultService().getUpdates().subscribe(this::onUpdate);
+    }
+
+    /**
+     * The bucket an IOU falls in: the first two hex digits of its linearId.
+     */
+    public static int bucketOf(UniqueIdentifier linearId) {
+        return Integer.parseInt(linearId.getId().toString().substring(0, 2), 16);
+    }
+
+    /**
+     * Returns the root digest of the IOUs shared with [counterparty]. Must be called within a database transaction,
+     * e.g. from a flow.
+     */
+    public SecureHash root(Party counterparty) {
+        return SecureHash.sha256(concat(branches(counterparty)));
+    }
+
+    /**
+     * Returns the [FANOUT] branch digests of the IOUs shared with [counterparty].
+     */
+    public List<SecureHash> branches(Party counterparty) {
+        ensureBuilt();
+        synchronized (this) {
+            final byte[][] buckets = bucketsFor(counterparty);
+            final List<SecureHash> branches = new ArrayList<>(FANOUT);
+            for (int branch = 0; branch < FANOUT; branch++) {
+                branches.add(SecureHash.sha256(concat(Arrays.asList(buckets).subList(branch * FANOUT, (branch + 1) * FANOUT))));
+            }
+            return branches;
+        }
+    }
+
+    /**
+     * Returns the digests of the [FANOUT] buckets under each of [branches], in order.
+     */
+    public List<SecureHash> buckets(Party counterparty, List<Integer> branches) {
+        ensureBuilt();
+        synchronized (this) {
+            final byte[][] buckets = bucketsFor(counterparty);
+            final List<SecureHash> digests = new ArrayList<>(branches.size() * FANOUT);
+            for (int branch : branches) {
+                for (int bucket = branch * FANOUT; bucket < (branch + 1) * FANOUT; bucket++) {
+                    digests.add(new SecureHash.SHA256(buckets[bucket].clone()));
+                }
+            }
+            return digests;
+        }
+    }
+
+    /**
+     * Returns our unconsumed IOUs with [counterparty] that fall in any of [buckets]. Only the IOUs shared with
+     * [counterparty] are read from the vault.
+     */
+    public List<IOUState> statesInBuckets(Party counterparty, Set<Integer> buckets) {
+        final List<IOUState> states = new ArrayList<>();
+        for (StateAndRef<IOUState> stateAndRef : query(withCounterparty(counterparty)).values()) {
+            final IOUState iou = stateAndRef.getState().getData();
+            if (buckets.contains(bucketOf(iou.getLinearId()))) states.add(iou);
+        }
+        return states;
+    }
+
+    /**
+     * Discards the digests and recomputes them from the vault. Must be called within a database transaction.
+     */
+    public void rebuild() {
+        synchronized (rebuildLock) {
+            synchronized (this) {
+                pending = new ArrayList<>();
+            }
+            // The vault is queried without holding the lock, so that updates can be held back rather than blocked.
+            final Map<StateRef, StateAndRef<IOUState>> ious;
+            try {
+                ious = query(new QueryCriteria.VaultQueryCriteria(Vault.StateStatus.UNCONSUMED));
+            } catch (RuntimeException e) {
+                synchronized (this) {
+                    pending = null;
+                }
+                throw e;
+            }
+            synchronized (this) {
+                for (Vault.Update<ContractState> update : pending) {
+                    for (StateAndRef<ContractState> produced : update.getProduced()) {
+                        if (produced.getState().getData() instanceof IOUState) ious.put(produced.getRef(), (StateAndRef<IOUState>) (StateAndRef<?>) produced);
+                    }
+                    for (StateAndRef<ContractState> consumed : update.getConsumed()) ious.remove(consumed.getRef());
+                }
+                pending = null;
+                bucketsByCounterparty.clear();
+                ious.values().forEach(stateAndRef -> toggle(stateAndRef.getState().getData()));
+                built = true;
+            }
+        }
+    }
+
+    /**
+     * Hashes the fields the two sides must agree on.
+     */
+    public static SecureHash hashOf(IOUState iou) {
+        return SecureHash.sha256(iou.getLinearId().getId() + "|" + iou.getLender().getName() + "|"
+                + iou.getBorrower().getName() + "|" + iou.getValue());
+    }
+
+    private synchronized void onUpdate(Vault.Update<ContractState> update) {
+        if (pending != null) {
+            pending.add(update);
+            return;
+        }
+        if (!built) return;
+        for (StateAndRef<ContractState> produced : update.getProduced()) {
+            if (produced.getState().getData() instanceof IOUState) toggle((IOUState) produced.getState().getData());
+        }
+        for (StateAndRef<ContractState> consumed : update.getConsumed()) {
+            if (consumed.getState().getData() instanceof IOUState) toggle((IOUState) consumed.getState().getData());
+        }
+    }
+
+    // XOR is its own inverse, so the same operation adds a produced IOU and removes a consumed one.
+    private void toggle(IOUState iou) {
+        final byte[] bucket = bucketsByCounterparty
+                .computeIfAbsent(counterpartyOf(iou), party -> new byte[BUCKETS][32])[bucketOf(iou.getLinearId())];
+        final byte[] hash = hashOf(iou).getBytes();
+        for (int i = 0; i < bucket.length; i++) bucket[i] ^= hash[i];
+    }
+
+    private void ensureBuilt() {
+        synchronized (rebuildLock) {
+            final boolean needed;
+            synchronized (this) {
+                needed = !built;
+            }
+            if (needed) rebuild();
+        }
+    }
+
+    private byte[][] bucketsFor(Party counterparty) {
+        return bucketsByCounterparty.getOrDefault(counterparty, new byte[BUCKETS][32]);
+    }
+
+    // Pages through the unconsumed IOUs that match [criteria].
+    private Map<StateRef, StateAndRef<IOUState>> query(QueryCriteria criteria) {
+        final Map<StateRef, StateAndRef<IOUState>> ious = new HashMap<>();
+        for (int page = DEFAULT_PAGE_NUM; ; page++) {
+            final Vault.Page<IOUState> results = serviceHub.getVaultService().queryBy(
+                    IOUState.class, criteria, new PageSpecification(page, DEFAULT_PAGE_SIZE), new Sort(ImmutableSet.of()));
+            results.getStates().forEach(stateAndRef -> ious.put(stateAndRef.getRef(), stateAndRef));
+            if ((long) page * DEFAULT_PAGE_SIZE >= results.getTotalStatesAvailable()) return ious;
+        }
+    }
+
+    private static QueryCriteria withCounterparty(Party counterparty) {
+        final String name = counterparty.getName().toString();
+        try {
+            final QueryCriteria asLender = new QueryCriteria.VaultCustomQueryCriteria(Builder.equal(
+                    IOUSchemaV1.PersistentIOU.class.getDeclaredField("lender"), name), Vault.StateStatus.UNCONSUMED);
+            final QueryCriteria asBorrower = new QueryCriteria.VaultCustomQueryCriteria(Builder.equal(
+                    IOUSchemaV1.PersistentIOU.class.getDeclaredField("borrower"), name), Vault.StateStatus.UNCONSUMED);
+            return asLender.or(asBorrower);
+        } catch (NoSuchFieldException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private Party counterpartyOf(IOUState iou) {
+        return iou.getLender().equals(me) ? iou.getBorrower() : iou.getLender();
+    }
+
+    private static byte[] concat(List<?> parts) {
+        final ByteBuffer buffer = ByteBuffer.allocate(parts.size() * 32);
+        for (Object part : parts) buffer.put(part instanceof SecureHash ? ((SecureHash) part).getBytes() : (byte[]) part);
+        return buffer.array();
+    }
+}
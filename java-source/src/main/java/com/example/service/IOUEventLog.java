@@ -0,0 +1,152 @@
+package com.example.service;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * An append-only log of newline-delimited JSON records, split into segment files that roll over by size.
+ *
+ * Every record is assigned the next offset, starting at zero, and written as {"offset":N,...}. Each segment is named
+ * after the offset of its first record (00000000000000000042.ndjson), so a consumer can find the segment holding any
+ * offset from the file names alone; see [IOUEventLogReader].
+ *
+ * Records are staged in a buffer and written with a FileChannel when the buffer fills or [flush] is called. On
+ * opening, a torn record at the end of the last segment (from a crash mid-write) is truncated away.
+ */
+public class IOUEventLog implements AutoCloseable {
+    static final String SEGMENT_SUFFIX = ".ndjson";
+    static final Pattern SEGMENT_NAME = Pattern.compile("\\d{20}\\" + SEGMENT_SUFFIX);
+
+    private final Path directory;
+    private final long maxSegmentBytes;
+    private final ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+
+    private FileChannel segment;
+    private long segmentBytes;
+    private long nextOffset;
+
+    public IOUEventLog(Path directory, long maxSegmentBytes) throws IOException {
+        this.directory = directory;
+        this.maxSegmentBytes = maxSegmentBytes;
+        Files.createDirectories(directory);
+
+        final List<Path> segments = segments(directory);
+        if (segments.isEmpty()) {
+            openSegment(0L);
+        } else {
+            recover(segments.get(segments.size() - 1));
+        }
+    }
+
+    /**
+     * Appends one record. [fields] is the body of a JSON object without its braces, e.g. "\"type\":\"PRODUCED\"".
+     * Returns the offset assigned to the record.
+     */
+    public synchronized long append(String fields) throws IOException {
+        final long offset = nextOffset;
+        final byte[] record = ("{\"offset\":" + offset + "," + fields + "}\n").getBytes(StandardCharsets.UTF_8);
+        if (segmentBytes + buffer.position() > 0 && segmentBytes + buffer.position() + record.length > maxSegmentBytes) {
+            flush();
+            segment.close();
+            openSegment(offset);
+        }
+        if (record.length > buffer.remaining()) {
+            flush();
+        }
+        if (record.length > buffer.capacity()) {
+            segmentBytes += writeFully(ByteBuffer.wrap(record));
+        } else {
+            buffer.put(record);
+        }
+        nextOffset = offset + 1;
+        return offset;
+    }
+
+    /**
+     * Writes any buffered records to the current segment.
+     */
+    public synchronized void flush() throws IOException {
+        buffer.flip();
+        segmentBytes += writeFully(buffer);
+        buffer.clear();
+    }
+
+    /**
+     * The offset the next record will be given.
+     */
+    public synchronized long nextOffset() {
+        return nextOffset;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        flush();
+        segment.force(true);
+        segment.close();
+    }
+
+    static List<Path> segments(Path directory) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(file -> SEGMENT_NAME.matcher(file.getFileName().toString()).matches())
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+
+    static long baseOffset(Path segment) {
+        final String name = segment.getFileName().toString();
+        return Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length()));
+    }
+
+    private void openSegment(long baseOffset) throws IOException {
+        final Path path = directory.resolve(String.format("%020d%s", baseOffset, SEGMENT_SUFFIX));
+        segment = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        segmentBytes = segment.size();
+        nextOffset = baseOffset;
+    }
+
+    /**
+     * Counts the complete records in the last segment to find the next offset, dropping any trailing partial record.
+     */
+    private void recover(Path last) throws IOException {
+        long records = 0;
+        long endOfLastRecord = 0;
+        try (FileChannel channel = FileChannel.open(last, StandardOpenOption.READ)) {
+            final ByteBuffer chunk = ByteBuffer.allocate(64 * 1024);
+            long position = 0;
+            while (channel.read(chunk) > 0) {
+                chunk.flip();
+                while (chunk.hasRemaining()) {
+                    position++;
+                    if (chunk.get() == '\n') {
+                        records++;
+                        endOfLastRecord = position;
+                    }
+                }
+                chunk.clear();
+            }
+        }
+        try (FileChannel channel = FileChannel.open(last, StandardOpenOption.WRITE)) {
+            if (channel.size() > endOfLastRecord) channel.truncate(endOfLastRecord);
+        }
+        openSegment(baseOffset(last));
+        nextOffset = baseOffset(last) + records;
+    }
+
+    private long writeFully(ByteBuffer source) throws IOException {
+        long written = 0;
+        while (source.hasRemaining()) {
+            written += segment.write(source);
+        }
+        return written;
+    }
+}
@@ -0,0 +1,62 @@
+package com.example.service;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Reads an [IOUEventLog] directory from a given offset, without any connection to the node.
+ *
+ * A consumer remembers the offset returned by [readFrom] and passes it back on its next call to resume exactly where
+ * it left off. A record that is still being written (no trailing newline yet) is left for the next call.
+ */
+public class IOUEventLogReader {
+    private final Path directory;
+
+    public IOUEventLogReader(Path directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Passes every complete record with an offset of at least [fromOffset] to [consumer], in order, and returns the
+     * offset to resume from.
+     */
+    public long readFrom(long fromOffset, Consumer<String> consumer) throws IOException {
+        final List<Path> segments = IOUEventLog.segments(directory);
+        long offset = fromOffset;
+        for (int i = 0; i < segments.size(); i++) {
+            // Skip whole segments that end before the requested offset.
+            if (i + 1 < segments.size() && IOUEventLog.baseOffset(segments.get(i + 1)) <= offset) continue;
+            offset = readSegment(segments.get(i), offset, consumer);
+        }
+        return offset;
+    }
+
+    private static long readSegment(Path segment, long fromOffset, Consumer<String> consumer) throws IOException {
+        long offset = IOUEventLog.baseOffset(segment);
+        long next = fromOffset;
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(segment))) {
+            final ByteArrayOutputStream line = new ByteArrayOutputStream(256);
+            int b;
+            while ((b = in.read()) != -1) {
+                if (b != '\n') {
+                    line.write(b);
+                    continue;
+                }
+                if (offset >= fromOffset) {
+                    consumer.accept(new String(line.toByteArray(), StandardCharsets.UTF_8));
+                    next = offset + 1;
+                }
+                offset++;
+                line.reset();
+            }
+        }
+        return next;
+    }
+}
@@ -0,0 +1,256 @@
+package com.example.service;
+
+import com.example.state.IOUState;
+import com.google.common.collect.ImmutableSet;
+import net.corda.core.contracts.ContractState;
+import net.corda.core.contracts.StateAndRef;
+import net.corda.core.node.AppServiceHub;
+import net.corda.core.node.services.CordaService;
+import net.corda.core.node.services.Vault;
+import net.corda.core.node.services.vault.*;
+import net.corda.core.serialization.SingletonSerializeAsToken;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static net.corda.core.node.services.vault.QueryCriteriaUtils.DEFAULT_PAGE_NUM;
+
+/**
+ * Writes every IOU the vault produces or consumes to a local [IOUEventLog], so that downstream systems can tail the
+ * log (see [IOUEventLogReader]) instead of polling the web API.
+ *
+ * Only committed vault updates are logged. If a write fails, the service stops logging rather than leave a gap, and
+ * [nextOffset] throws until the node is restarted. On startup, the service backfills every IOU the vault recorded or
+ * consumed since an overlap window before the last logged event's recordedAt (or every IOU, for a new log), stamped
+ * with the vault's own time, so a restart closes the gap left by a failure or by updates that arrived while the node
+ * was stopping.
+ *
+ * Live events are stamped with the node's clock when the update is delivered. That can be later than the time the
+ * vault recorded the state, so an update delivered after the last logged one may have been recorded before it. The
+ * overlap window covers that. An event already in the log is identified by its type, txId and outputIndex, and is
+ * not logged again.
+ *
+ * The log is configured with system properties:
+ * - example.eventLog.dir (default "iou-events"), under which the log is kept in a sub-directory named after the
+ *   node's organisation. A relative path is resolved against the node process's working directory. That is the
+ *   node's directory when the node is started from it, as runnodes does. Nodes started in a test JVM share that
+ *   JVM's working directory.
+ * - example.eventLog.maxSegmentBytes (default 64 MB)
+ * - example.eventLog.backfillOverlapSeconds (default 300)
+ */
+@CordaService
+public class IOUEventLogService extends SingletonSerializeAsToken {
+    static private final Logger logger = LoggerFactory.getLogger(IOUEventLogService.class);
+
+    static private final Pattern RECORDED_AT = Pattern.compile("\"recordedAt\":\"([^\"]+)\"");
+    static private final Pattern EVENT_KEY = Pattern.compile("\"type\":\"([A-Z]+)\",\"recordedAt\":\"([^\"]+)\",\"txId\":\"([^\"]+)\",\"outputIndex\":(\\d+)");
+    static private final int BACKFILL_PAGE_SIZE = 1000;
+
+    private final IOUEventLog eventLog;
+    private final Clock clock;
+    private volatile IOException failure;
+
+    public IOUEventLogService(AppServiceHub serviceHub) throws IOException {
+        // Each node gets its own sub-directory, as several nodes may share a working directory (e.g. in tests).
+        final String nodeDirectory = serviceHub.getMyInfo().getLegalIdentities().get(0).getName().getOrganisation()
+                .replaceAll("[^A-Za-z0-9._-]", "_");
+        final Path directory = Paths.get(System.getProperty("example.eventLog.dir", "iou-events")).resolve(nodeDirectory);
+        this.eventLog = new IOUEventLog(directory, Long.getLong("example.eventLog.maxSegmentBytes", 64L * 1024 * 1024));
+        this.clock = serviceHub.getClock();
+        final Duration overlap = Duration.ofSeconds(Long.getLong("example.eventLog.backfillOverlapSeconds", 300));
+        final Instant last = lastRecordedAt(directory);
+        final Instant since = last == null ? null : last.minus(overlap);
+        // Services are created before the node starts any flow, so nothing is recorded between the backfill and the
+        // subscription.
+        backfill(serviceHub, since, loggedSince(directory, since, overlap));
+        serviceHub.getVaultService().getUpdates().subscribe(this::onUpdate,
+                e -> fail(new IOException("The vault's update feed failed", e)));
+    }
+
+    /**
+     * The offset the next event will be given. Throws if logging stopped after a failure.
+     */
+    public long nextOffset() {
+        final IOException failed = failure;
+        if (failed != null) {
+            throw new IllegalStateException("The IOU event log stopped after a failure; restart the node to backfill it", failed);
+        }
+        return eventLog.nextOffset();
+    }
+
+    private void onUpdate(Vault.Update<ContractState> update) {
+        if (failure != null) return;
+        try {
+            final Instant recordedAt = clock.instant();
+            boolean logged = false;
+            for (StateAndRef<ContractState> consumed : update.getConsumed()) {
+                logged |= append("CONSUMED", consumed, recordedAt);
+            }
+            for (StateAndRef<ContractState> produced : update.getProduced()) {
+                logged |= append("PRODUCED", produced, recordedAt);
+            }
+            // One write per vault update, however many states it holds.
+            if (logged) eventLog.flush();
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+
+    private void fail(IOException e) {
+        failure = e;
+        logger.error("The IOU event log has stopped; restart the node to backfill the events it missed", e);
+    }
+
+    // The recordedAt of the last event in the log, or null if the log is empty.
+    private Instant lastRecordedAt(Path directory) throws IOException {
+        final long last = eventLog.nextOffset() - 1;
+        if (last < 0) return null;
+        final List<String> records = new ArrayList<>(1);
+        new IOUEventLogReader(directory).readFrom(last, records::add);
+        if (records.isEmpty()) throw new IOException("The last record in " + directory + " could not be read");
+        return stampOf(records.get(0));
+    }
+
+    /**
+     * The keys (see [key]) of the logged events stamped at or after [since], or none if [since] is null.
+     *
+     * The stamps are only roughly in order, as a backfill's events can be older than the live events before them, so
+     * the log is read back, a doubling number of records at a time, until the first record read is older than [since]
+     * by a further [overlap].
+     */
+    private Set<String> loggedSince(Path directory, Instant since, Duration overlap) throws IOException {
+        final Set<String> keys = new HashSet<>();
+        if (since == null) return keys;
+        final long end = eventLog.nextOffset();
+        final Instant stop = since.minus(overlap);
+        final IOUEventLogReader reader = new IOUEventLogReader(directory);
+        final List<String> records = new ArrayList<>();
+        for (long count = BACKFILL_PAGE_SIZE; ; count *= 2) {
+            final long from = Math.max(0, end - count);
+            records.clear();
+            reader.readFrom(from, records::add);
+            if (from == 0 || records.isEmpty() || stampOf(records.get(0)).isBefore(stop)) break;
+        }
+        for (String record : records) {
+            final Matcher matcher = EVENT_KEY.matcher(record);
+            if (!matcher.find()) throw new IOException("A record in " + directory + " has no type, recordedAt, txId or outputIndex");
+            if (!Instant.parse(matcher.group(2)).isBefore(since)) {
+                keys.add(matcher.group(1) + " " + matcher.group(3) + " " + matcher.group(4));
+            }
+        }
+        return keys;
+    }
+
+    private static Instant stampOf(String record) throws IOException {
+        final Matcher matcher = RECORDED_AT.matcher(record);
+        if (!matcher.find()) throw new IOException("An IOU event log record has no recordedAt: " + record);
+        return Instant.parse(matcher.group(1));
+    }
+
+    // Identifies an event in the log: an output can be produced once and consumed once.
+    private static String key(String type, StateAndRef<?> stateAndRef) {
+        return type + " " + stateAndRef.getRef().getTxhash() + " " + stateAndRef.getRef().getIndex();
+    }
+
+    /**
+     * Logs every IOU recorded or consumed at or after [since] (or ever, if null) in the order the vault recorded them,
+     * except the events whose keys are in [logged].
+     */
+    private void backfill(AppServiceHub serviceHub, Instant since, Set<String> logged) throws IOException {
+        final List<Event> events = new ArrayList<>();
+        collect(serviceHub, QueryCriteria.TimeInstantType.CONSUMED, since, events);
+        collect(serviceHub, QueryCriteria.TimeInstantType.RECORDED, since, events);
+        // The sort is stable, so a consumption stays ahead of a production at the same instant, as in a live update.
+        events.sort(Comparator.comparing((Event event) -> event.at));
+        int backfilled = 0;
+        for (Event event : events) {
+            if (logged.contains(key(event.type, event.stateAndRef))) continue;
+            append(event.type, event.stateAndRef, event.at);
+            backfilled++;
+        }
+        eventLog.flush();
+        if (backfilled > 0) {
+            logger.info("Backfilled {} IOU events {}", backfilled, since == null ? "from the vault" : "recorded since " + since);
+        }
+    }
+
+    private static void collect(AppServiceHub serviceHub, QueryCriteria.TimeInstantType timeType, Instant since, List<Event> events) {
+        final boolean consumed = timeType == QueryCriteria.TimeInstantType.CONSUMED;
+        final QueryCriteria.TimeCondition after = since == null ? null : new QueryCriteria.TimeCondition(
+                timeType, new ColumnPredicate.BinaryComparison<>(BinaryComparisonOperator.GREATER_THAN_OR_EQUAL, since));
+        final QueryCriteria criteria = new QueryCriteria.VaultQueryCriteria(
+                consumed ? Vault.StateStatus.CONSUMED : Vault.StateStatus.ALL, null, null, null, null, after);
+        final Sort byTime = new Sort(ImmutableSet.of(
+                new Sort.SortColumn(new SortAttribute.Standard(consumed ? Sort.VaultStateAttribute.CONSUMED_TIME : Sort.VaultStateAttribute.RECORDED_TIME), Sort.Direction.ASC),
+                new Sort.SortColumn(new SortAttribute.Standard(Sort.CommonStateAttribute.STATE_REF_TXN_ID), Sort.Direction.ASC),
+                new Sort.SortColumn(new SortAttribute.Standard(Sort.CommonStateAttribute.STATE_REF_INDEX), Sort.Direction.ASC)));
+        // Offset paging is safe here: nothing is recorded while the node is starting.
+        for (int page = DEFAULT_PAGE_NUM; ; page++) {
+            final Vault.Page<IOUState> results = serviceHub.getVaultService().queryBy(
+                    IOUState.class, criteria, new PageSpecification(page, BACKFILL_PAGE_SIZE), byTime);
+            for (int i = 0; i < results.getStates().size(); i++) {
+                final Vault.StateMetadata metadata = results.getStatesMetadata().get(i);
+                events.add(new Event(consumed ? "CONSUMED" : "PRODUCED", results.getStates().get(i),
+                        consumed ? metadata.getConsumedTime() : metadata.getRecordedTime()));
+            }
+            if (results.getStates().size() < BACKFILL_PAGE_SIZE) return;
+        }
+    }
+
+    private boolean append(String type, StateAndRef<? extends ContractState> stateAndRef, Instant recordedAt) throws IOException {
+        if (!(stateAndRef.getState().getData() instanceof IOUState)) return false;
+        final IOUState iou = (IOUState) stateAndRef.getState().getData();
+        final StringBuilder fields = new StringBuilder(256)
+                .append("\"type\":\"").append(type).append('"')
+                .append(",\"recordedAt\":\"").append(recordedAt).append('"')
+                .append(",\"txId\":\"").append(stateAndRef.getRef().getTxhash()).append('"')
+                .append(",\"outputIndex\":").append(stateAndRef.getRef().getIndex())
+                .append(",\"linearId\":\"").append(iou.getLinearId().getId()).append('"')
+                .append(",\"externalId\":").append(quote(iou.getLinearId().getExternalId()))
+                .append(",\"lender\":").append(quote(iou.getLender().getName().toString()))
+                .append(",\"borrower\":").append(quote(iou.getBorrower().getName().toString()))
+                .append(",\"value\":").append(iou.getValue());
+        eventLog.append(fields.toString());
+        return true;
+    }
+
+    private static String quote(String value) {
+        if (value == null) return "null";
+        final StringBuilder quoted = new StringBuilder(value.length() + 2).append('"');
+        for (char c : value.toCharArray()) {
+            if (c == '"' || c == '\\') {
+                quoted.append('\\').append(c);
+            } else if (c < 0x20) {
+                quoted.append(String.format("\\u%04x", (int) c));
+            } else {
+                quoted.append(c);
+            }
+        }
+        return quoted.append('"').toString();
+    }
+
+    private static final class Event {
+        private final String type;
+        private final StateAndRef<IOUState> stateAndRef;
+        private final Instant at;
+
+        private Event(String type, StateAndRef<IOUState> stateAndRef, Instant at) {
+            this.type = type;
+            this.stateAndRef = stateAndRef;
+            this.at = at;
+        }
+    }
+}
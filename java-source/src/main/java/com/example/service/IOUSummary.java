@@ -0,0 +1,36 @@
+package com.example.service;
+
+import net.corda.core.serialization.CordaSerializable;
+
+import java.time.LocalDate;
+
+/**
+ * One row of a pre-aggregated IOU summary maintained by the [IOUSummaryService].
+ *
+ * For the per-counterparty summary [day] is null and the counts cover unconsumed IOUs. For the per-day summary the
+ * counts cover IOUs recorded on that day (UTC).
+ */
+@CordaSerializable
+public class IOUSummary {
+    private final String counterparty;
+    private final LocalDate day;
+    private final long count;
+    private final long totalValue;
+
+    public IOUSummary(String counterparty, LocalDate day, long count, long totalValue) {
+        this.counterparty = counterparty;
+        this.day = day;
+        this.count = count;
+        this.totalValue = totalValue;
+    }
+
+    public String getCounterparty() { return counterparty; }
+    public LocalDate getDay() { return day; }
+    public long getCount() { return count; }
+    public long getTotalValue() { return totalValue; }
+
+    @Override
+    public String toString() {
+        return String.format("IOUSummary(counterparty=%s, day=%s, count=%s, totalValue=%s)", counterparty, day, count, totalValue);
+    }
+}
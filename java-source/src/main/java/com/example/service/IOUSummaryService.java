@@ -0,0 +1,254 @@
+package com.example.service;
+
+import com.example.state.IOUState;
+import net.corda.core.contracts.ContractState;
+import net.corda.core.contracts.StateAndRef;
+import net.corda.core.identity.Party;
+import net.corda.core.node.AppServiceHub;
+import net.corda.core.node.services.CordaService;
+import net.corda.core.node.services.Vault;
+import net.corda.core.serialization.SingletonSerializeAsToken;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.*;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Maintains pre-aggregated IOU summary tables inside the node, so that reporting never has to scan iou_states.
+ *
+ * - iou_summary_by_counterparty: number and total value of unconsumed IOUs per counterparty.
+ * - iou_summary_by_day: number and total value of IOUs recorded per day (UTC) and counterparty.
+ *
+ * The tables are declared by [IOUSummarySchemaV1], so the node creates them at startup. They are updated from the
+ * vault's raw updates, which are published inside the database transaction that records the states, so the summaries
+ * commit or roll back together with the vault. A live IOU is counted on the node clock's current day in UTC, which is
+ * when the vault records it; [rebuild] counts each IOU on the UTC day of its recorded time, so the two agree.
+ *
+ * Each update is applied under a savepoint. If it fails, none of its deltas are kept, the vault's transaction carries
+ * on, and the service is marked as needing a rebuild: [needsRebuild] is then true until [rebuild] has run, and the
+ * summary flows refuse to answer in the meantime. IOUs recorded before the CorDapp was upgraded are folded in by
+ * [rebuild] in the same way.
+ *
+ * Live updates and [rebuild] exclude each other through a read-write lock: updates share it, a rebuild takes it
+ * alone. A rebuild whose statements wait on a vault transaction that is itself waiting to apply an update is ended by
+ * the database's lock timeout, and fails rather than the vault's transaction.
+ */
+@CordaService
+public class IOUSummaryService extends SingletonSerializeAsToken {
+    static private final Logger logger = LoggerFactory.getLogger(IOUSummaryService.class);
+
+    static private final String BY_COUNTERPARTY = "iou_summary_by_counterparty";
+    static private final String BY_DAY = "iou_summary_by_day";
+
+    private final AppServiceHub serviceHub;
+    private final Party me;
+    private final ReadWriteLock rebuildLock = new ReentrantReadWriteLock();
+    private volatile boolean needsRebuild = false;
+
+    public IOUSummaryService(AppServiceHub serviceHub) {
+        this.serviceHub = serviceHub;
+        this.me = serviceHub.getMyInfo().getLegalIdentities().get(0);
+        serviceHub.getVaultService().getRawUpdates().subscribe(this::onUpdate,
+                e -> logger.error("The vault's update feed failed; the IOU summary tables are no longer maintained", e));
+    }
+
+    /**
+     * Whether an update failed to apply, so that the tables no longer match the vault until [rebuild] is run.
+     */
+    public boolean needsRebuild() {
+        return needsRebuild;
+    }
+
+    /**
+     * Returns the outstanding IOUs per counterparty. Must be called within a database transaction, e.g. from a flow.
+     */
+    public List<IOUSummary> summaryByCounterparty() throws SQLException {
+        final String sql = "SELECT counterparty, iou_count, total_value FROM " + BY_COUNTERPARTY + " ORDER BY counterparty";
+        try (PreparedStatement statement = serviceHub.jdbcSession().prepareStatement(sql);
+             ResultSet rs = statement.executeQuery()) {
+            final List<IOUSummary> rows = new ArrayList<>();
+            while (rs.next()) {
+                rows.add(new IOUSummary(rs.getString(1), null, rs.getLong(2), rs.getLong(3)));
+            }
+            return rows;
+        }
+    }
+
+    /**
+     * Returns the IOUs recorded per day and counterparty on or after [since]. Must be called within a database
+     * transaction, e.g. from a flow.
+     */
+    public List<IOUSummary> summaryByDay(LocalDate since) throws SQLException {
+        final String sql = "SELECT counterparty, day, iou_count, total_value FROM " + BY_DAY + " WHERE day >= ? ORDER BY day, counterparty";
+        try (PreparedStatement statement = serviceHub.jdbcSession().prepareStatement(sql)) {
+            statement.setDate(1, Date.valueOf(since));
+            try (ResultSet rs = statement.executeQuery()) {
+                final List<IOUSummary> rows = new ArrayList<>();
+                while (rs.next()) {
+                    rows.add(new IOUSummary(rs.getString(1), rs.getDate(2).toLocalDate(), rs.getLong(3), rs.getLong(4)));
+                }
+                return rows;
+            }
+        }
+    }
+
+    private void onUpdate(Vault.Update<ContractState> update) {
+        if (!containsIOUs(update)) return;
+        rebuildLock.readLock().lock();
+        try {
+            final Connection connection = serviceHub.jdbcSession();
+            final Savepoint savepoint = connection.setSavepoint();
+            try {
+                applyDeltas(update);
+                connection.releaseSavepoint(savepoint);
+            } catch (SQLException | RuntimeException e) {
+                connection.rollback(savepoint);
+                throw e;
+            }
+        } catch (SQLException | RuntimeException e) {
+            // Throwing would end the subscription, and with it every later update.
+            needsRebuild = true;
+            logger.error("Failed to update the IOU summary tables; start IOUSummaryFlows.Rebuild to recompute them", e);
+        } finally {
+            rebuildLock.readLock().unlock();
+        }
+    }
+
+    private void applyDeltas(Vault.Update<ContractState> update) throws SQLException {
+        final LocalDate today = LocalDate.now(serviceHub.getClock().withZone(ZoneOffset.UTC));
+        for (StateAndRef<ContractState> produced : update.getProduced()) {
+            if (!(produced.getState().getData() instanceof IOUState)) continue;
+            final IOUState iou = (IOUState) produced.getState().getData();
+            adjustCounterparty(counterpartyOf(iou), 1, iou.getValue());
+            adjustDay(today, counterpartyOf(iou), 1, iou.getValue());
+        }
+        for (StateAndRef<ContractState> consumed : update.getConsumed()) {
+            if (!(consumed.getState().getData() instanceof IOUState)) continue;
+            final IOUState iou = (IOUState) consumed.getState().getData();
+            adjustCounterparty(counterpartyOf(iou), -1, -iou.getValue());
+        }
+    }
+
+    private static boolean containsIOUs(Vault.Update<ContractState> update) {
+        for (StateAndRef<ContractState> produced : update.getProduced()) {
+            if (produced.getState().getData() instanceof IOUState) return true;
+        }
+        for (StateAndRef<ContractState> consumed : update.getConsumed()) {
+            if (consumed.getState().getData() instanceof IOUState) return true;
+        }
+        return false;
+    }
+
+    private String counterpartyOf(IOUState iou) {
+        return (iou.getLender().equals(me) ? iou.getBorrower() : iou.getLender()).getName().toString();
+    }
+
+    private void adjustCounterparty(String counterparty, long countDelta, long valueDelta) throws SQLException {
+        upsert("UPDATE " + BY_COUNTERPARTY + " SET iou_count = iou_count + ?, total_value = total_value + ? WHERE counterparty = ?",
+                "INSERT INTO " + BY_COUNTERPARTY + " (iou_count, total_value, counterparty) VALUES (?, ?, ?)",
+                countDelta, valueDelta, counterparty, null, null);
+    }
+
+    private void adjustDay(LocalDate day, String counterparty, long countDelta, long valueDelta) throws SQLException {
+        upsert("UPDATE " + BY_DAY + " SET iou_count = iou_count + ?, total_value = total_value + ? WHERE summary_key = ?",
+                "INSERT INTO " + BY_DAY + " (iou_count, total_value, summary_key, counterparty, day) VALUES (?, ?, ?, ?, ?)",
+                countDelta, valueDelta, day + "/" + counterparty, counterparty, day);
+    }
+
+    /**
+     * Applies a delta to an existing row, or inserts it. If a concurrent transaction inserted the same row first, the
+     * insert fails once that transaction commits and the update is retried against the committed row.
+     *
+     * The insert runs under a savepoint: PostgreSQL aborts the whole transaction on a failed statement unless it is
+     * rolled back to a savepoint first. A JVM lock would not do instead, as it would be held while the statement waits
+     * for another vault transaction's row lock, and that transaction may need the JVM lock for its next row.
+     */
+    private void upsert(String update, String insert, long countDelta, long valueDelta, String key, String counterparty, LocalDate day) throws SQLException {
+        final Connection connection = serviceHub.jdbcSession();
+        if (execute(connection, update, countDelta, valueDelta, key, null, null) > 0) return;
+        final Savepoint savepoint = connection.setSavepoint();
+        try {
+            execute(connection, insert, countDelta, valueDelta, key, counterparty, day);
+        } catch (SQLException e) {
+            // SQLSTATE class 23 is an integrity constraint violation, here a duplicate key.
+            if (e.getSQLState() == null || !e.getSQLState().startsWith("23")) throw e;
+            connection.rollback(savepoint);
+            execute(connection, update, countDelta, valueDelta, key, null, null);
+            return;
+        }
+        connection.releaseSavepoint(savepoint);
+    }
+
+    private static int execute(Connection connection, String sql, long countDelta, long valueDelta, String key, String counterparty, LocalDate day) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+            statement.setLong(1, countDelta);
+            statement.setLong(2, valueDelta);
+            statement.setString(3, key);
+            if (counterparty != null) statement.setString(4, counterparty);
+            if (day != null) statement.setDate(5, Date.valueOf(day));
+            return statement.executeUpdate();
+        }
+    }
+
+    /**
+     * Recomputes both summary tables from the vault and clears [needsRebuild]. Must be called within a database
+     * transaction, e.g. from a flow.
+     */
+    public void rebuild() throws SQLException {
+        rebuildLock.writeLock().lock();
+        try {
+            final Connection connection = serviceHub.jdbcSession();
+            try (Statement statement = connection.createStatement()) {
+                statement.executeUpdate("DELETE FROM " + BY_COUNTERPARTY);
+                statement.executeUpdate("DELETE FROM " + BY_DAY);
+            }
+            try (PreparedStatement statement = connection.prepareStatement("INSERT INTO " + BY_COUNTERPARTY
+                    + " (counterparty, iou_count, total_value) SELECT cp, COUNT(*), SUM(v) FROM ("
+                    + ownIOUs("s.state_status = 0") + ") t GROUP BY cp")) {
+                statement.setString(1, me.getName().toString());
+                statement.executeUpdate();
+            }
+            // Days are taken in Java rather than with CAST(... AS DATE), which would use the session's time zone.
+            final Map<LocalDate, Map<String, long[]>> days = new HashMap<>();
+            try (PreparedStatement statement = connection.prepareStatement(ownIOUs("1 = 1"))) {
+                statement.setString(1, me.getName().toString());
+                try (ResultSet rs = statement.executeQuery()) {
+                    while (rs.next()) {
+                        final LocalDate day = rs.getTimestamp(3).toInstant().atZone(ZoneOffset.UTC).toLocalDate();
+                        final long[] totals = days.computeIfAbsent(day, d -> new HashMap<>())
+                                .computeIfAbsent(rs.getString(1), cp -> new long[2]);
+                        totals[0]++;
+                        totals[1] += rs.getLong(2);
+                    }
+                }
+            }
+            for (Map.Entry<LocalDate, Map<String, long[]>> day : days.entrySet()) {
+                for (Map.Entry<String, long[]> counterparty : day.getValue().entrySet()) {
+                    adjustDay(day.getKey(), counterparty.getKey(), counterparty.getValue()[0], counterparty.getValue()[1]);
+                }
+            }
+            needsRebuild = false;
+        } finally {
+            rebuildLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Selects (counterparty, value, recorded time) for each IOU in the vault matching [condition].
+     */
+    private static String ownIOUs(String condition) {
+        return "SELECT CASE WHEN i.lender = ? THEN i.borrower ELSE i.lender END AS cp, i.value AS v, "
+                + "s.recorded_timestamp AS t "
+                + "FROM iou_states i JOIN vault_states s "
+                + "ON s.transaction_id = i.transaction_id AND s.output_index = i.output_index "
+                + "WHERE " + condition;
+    }
+}
@@ -0,0 +1,161 @@
+package com.example.trace;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Records span timings for IOU requests as they pass through the web API, the [ExampleFlow.Initiator] and the
+ * [ExampleFlow.Acceptor], so that a slow request can be broken down stage by stage across nodes.
+ *
+ * Spans are written in the Chrome Trace Event format (one "complete" event per span), which chrome://tracing and
+ * Perfetto open directly. Each process writes its own file; since timestamps are wall-clock microseconds, the files
+ * from several nodes can be merged by concatenating their events. Durations are measured with System.nanoTime(), so
+ * they are exact however the wall clock moves; only a span's start is placed on the wall clock. Every event carries
+ * the request's correlation id in args.traceId, and every component (e.g. a node or its webserver) appears as its own
+ * process row.
+ *
+ * Tracing is off unless the example.trace.dir system property names a directory to write to.
+ *
+ * Independently of the trace file, every span is also emitted as a StageEvent to Java Flight Recorder (JDK 8u262+
+ * or 11+), where it costs next to nothing unless a recording has enabled com.example.Stage events. This lets a
+ * recording attribute allocation and time to stages. StageEvent is built separately, only by JDKs that have
+ * jdk.jfr, and looked up reflectively here, so spans simply aren't emitted to JFR when it is absent.
+ */
+public final class TraceRecorder {
+    static private final Logger logger = LoggerFactory.getLogger(TraceRecorder.class);
+
+    static private final FileChannel traceFile = openTraceFile(System.getProperty("example.trace.dir"));
+    static private final Set<String> namedComponents = ConcurrentHashMap.newKeySet();
+    static private final MethodHandle stageEventEmitter = findStageEvent();
+    static private final ThreadLocal<String> currentTraceId = new ThreadLocal<>();
+    // Longer than any request; an older start time must come from before a restart.
+    static private final long MAX_SPAN_NANOS = TimeUnit.DAYS.toNanos(1);
+
+    private TraceRecorder() { }
+
+    public static boolean isEnabled() {
+        return traceFile != null;
+    }
+
+    /**
+     * Returns a new correlation id for a request entering the system.
+     */
+    public static String newTraceId() {
+        return UUID.randomUUID().toString();
+    }
+
+    /**
+     * Makes [traceId] the id returned by [currentTraceId] on this thread, until [clearCurrentTraceId].
+     */
+    public static void setCurrentTraceId(String traceId) {
+        currentTraceId.set(traceId);
+    }
+
+    public static void clearCurrentTraceId() {
+        currentTraceId.remove();
+    }
+
+    /**
+     * Returns the correlation id of the request this thread is serving, or a new one if it is not serving one.
+     */
+    public static String currentTraceId() {
+        final String traceId = currentTraceId.get();
+        return traceId != null ? traceId : newTraceId();
+    }
+
+    /**
+     * The current System.nanoTime(), to be passed back to [record] as a span's start. It is only comparable within
+     * one process, so a span that is still open when its node restarts is recorded with a duration of zero.
+     */
+    public static long now() {
+        return System.nanoTime();
+    }
+
+    /**
+     * Records a span of [component] named [stage] for request [traceId], from [startNanos] (see [now]) until now.
+     */
+    public static void record(String component, String traceId, String stage, long startNanos) {
+        final long elapsedNanos = System.nanoTime() - startNanos;
+        final long durationMicros = elapsedNanos > 0 && elapsedNanos < MAX_SPAN_NANOS ? elapsedNanos / 1000L : 0L;
+        if (stageEventEmitter != null) emitStageEvent(component, stage, traceId, durationMicros);
+        if (traceFile == null) return;
+        final int pid = component.hashCode() & 0x7fffffff;
+        final StringBuilder events = new StringBuilder(256);
+        if (namedComponents.add(component)) {
+            events.append("{\"name\":\"process_name\",\"ph\":\"M\",\"pid\":").append(pid)
+                    .append(",\"args\":{\"name\":").append(quote(component)).append("}},\n");
+        }
+        events.append("{\"name\":").append(quote(stage))
+                .append(",\"cat\":\"iou\",\"ph\":\"X\",\"ts\":").append(System.currentTimeMillis() * 1000L - durationMicros)
+                .append(",\"dur\":").append(durationMicros)
+                .append(",\"pid\":").append(pid)
+                .append(",\"tid\":").append(traceId.hashCode() & 0x7fffffff)
+                .append(",\"args\":{\"traceId\":").append(quote(traceId)).append("}},\n");
+        write(events.toString());
+    }
+
+    private static synchronized void write(String events) {
+        try {
+            final ByteBuffer bytes = ByteBuffer.wrap(events.getBytes(StandardCharsets.UTF_8));
+            while (bytes.hasRemaining()) traceFile.write(bytes);
+        } catch (IOException e) {
+            logger.warn("Failed to write trace events", e);
+        }
+    }
+
+    private static FileChannel openTraceFile(String directory) {
+        if (directory == null) return null;
+        try {
+            final Path dir = Files.createDirectories(Paths.get(directory));
+            // The JSON array format tolerates a missing closing bracket, so events can simply be appended.
+            final String processId = ManagementFactory.getRuntimeMXBean().getName().split("@")[0];
+            final FileChannel channel = FileChannel.open(dir.resolve("iou-trace-" + processId + ".json"),
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+            channel.write(ByteBuffer.wrap("[\n".getBytes(StandardCharsets.UTF_8)));
+            return channel;
+        } catch (IOException e) {
+            logger.warn("Tracing disabled: cannot open a trace file in " + directory, e);
+            return null;
+        }
+    }
+
+    // StageEvent.emit, or null if StageEvent wasn't built or the JDK has no jdk.jfr.
+    private static MethodHandle findStageEvent() {
+        try {
+            Class.forName("jdk.jfr.Event");
+            return MethodHandles.lookup().findStatic(Class.forName("com.example.trace.StageEvent"), "emit",
+                    MethodType.methodType(void.class, String.class, String.class, String.class, long.class));
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return null;
+        }
+    }
+
+    private static void emitStageEvent(String component, String stage, String traceId, long durationMicros) {
+        try {
+            stageEventEmitter.invokeExact(component, stage, traceId, durationMicros);
+        } catch (Throwable e) {
+            logger.warn("Failed to emit a JFR event for stage {}", stage, e);
+        }
+    }
+
+    private static String quote(String value) {
+        return "\"" + value.replace("\\", "\\\\").replace("\"", "\\\"") + "\"";
+    }
+}
@@ -49,18 +49,14 @@ app.controller('DemoAppController', function($http, $location, $uibModal) {
         modalInstance.result.then(() => {}, () => {});
     };
 
-    demoApp.getIOUs = () => $http.get(apiBaseURL + "ious")
-        .then((response) => demoApp.ious = Object.keys(response.data)
-            .map((key) => response.data[key].state.data)
-            .reverse());
-
-    demoApp.getMyIOUs = () => $http.get(apiBaseURL + "my-ious")
-        .then((response) => demoApp.myious = Object.keys(response.data)
-            .map((key) => response.data[key].state.data)
-            .reverse());
+    // Fetches both IOU lists in one round-trip, with only the fields the page displays.
+    demoApp.getIOUs = () => $http.get(apiBaseURL + "dashboard?fields=lender,borrower,value")
+        .then((response) => {
+            demoApp.ious = response.data.all.reverse();
+            demoApp.myious = response.data.mine.reverse();
+        });
 
     demoApp.getIOUs();
-    demoApp.getMyIOUs();
 
 });
 
@@ -87,7 +83,6 @@ app.controller('ModalInstanceCtrl', function ($http, $location, $uibModalInstanc
                 (result) => {
                     modalInstance.displayMessage(result);
                     demoApp.getIOUs();
-                    demoApp.getMyIOUs();
                 },
                 (result) => {
                     modalInstance.displayMessage(result);
@@ -0,0 +1,72 @@
+package com.example.api;
+
+import net.corda.core.identity.CordaX500Name;
+import org.junit.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class FlowAdmissionControlTests {
+    private final CordaX500Name partyA = new CordaX500Name("PartyA", "London", "GB");
+    private final CordaX500Name partyB = new CordaX500Name("PartyB", "New York", "US");
+
+    @Test
+    public void requestsBeyondCapacityAndQueueAreShed() throws Exception {
+        FlowAdmissionControl control = new FlowAdmissionControl(1, 0, 0, 0);
+        FlowAdmissionControl.Permit first = control.tryAdmit(partyA);
+        assertNotNull(first);
+        assertNull(control.tryAdmit(partyB));
+
+        first.close();
+        assertNotNull(control.tryAdmit(partyB));
+        assertEquals(1L, control.stats().get("rejected"));
+    }
+
+    @Test
+    public void perCounterpartyLimitOnlyAffectsThatCounterparty() throws Exception {
+        FlowAdmissionControl control = new FlowAdmissionControl(10, 1, 0, 0);
+        assertNotNull(control.tryAdmit(partyA));
+        assertNull(control.tryAdmit(partyA));
+        assertNotNull(control.tryAdmit(partyB));
+        assertEquals(2, control.stats().get("inFlight"));
+    }
+
+    @Test
+    public void closingAPermitTwiceOnlyReleasesOneSlot() throws Exception {
+        FlowAdmissionControl control = new FlowAdmissionControl(1, 0, 0, 0);
+        FlowAdmissionControl.Permit permit = control.tryAdmit(partyA);
+        permit.close();
+        permit.close();
+        assertNotNull(control.tryAdmit(partyA));
+        assertNull(control.tryAdmit(partyA));
+    }
+
+    @Test
+    public void callersQueuedForASlowCounterpartyDoNotHoldUpOthers() throws Exception {
+        FlowAdmissionControl control = new FlowAdmissionControl(2, 1, 10, 2000);
+        assertNotNull(control.tryAdmit(partyA));
+        CompletableFuture<FlowAdmissionControl.Permit> queued = waitInQueue(control, partyA);
+
+        long start = System.nanoTime();
+        assertNotNull(control.tryAdmit(partyB));
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 1000);
+        assertNull(queued.get());
+    }
+
+    // Calls tryAdmit on another thread and returns once that call is waiting in the queue.
+    private static CompletableFuture<FlowAdmissionControl.Permit> waitInQueue(FlowAdmissionControl control, CordaX500Name counterparty) throws InterruptedException {
+        CompletableFuture<FlowAdmissionControl.Permit> result = new CompletableFuture<>();
+        Thread thread = new Thread(() -> {
+            try {
+                result.complete(control.tryAdmit(counterparty));
+            } catch (InterruptedException e) {
+                result.completeExceptionally(e);
+            }
+        });
+        thread.start();
+        while (thread.getState() != Thread.State.TIMED_WAITING) Thread.sleep(1);
+        return result;
+    }
+}
@@ -0,0 +1,108 @@
+package com.example.api;
+
+import com.google.common.collect.ImmutableList;
+import net.corda.core.contracts.StateRef;
+import net.corda.core.crypto.SecureHash;
+import net.corda.core.identity.CordaX500Name;
+import net.corda.core.identity.Party;
+import net.corda.testing.core.TestIdentity;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class IOUBatcherTests {
+    static private final Party lender = new TestIdentity(new CordaX500Name("MegaCorp", "London", "GB")).getParty();
+    static private final Party borrower = new TestIdentity(new CordaX500Name("MiniCorp", "London", "GB")).getParty();
+
+    // The values of each batch handed to the starter, in order.
+    private final List<List<Integer>> batches = new CopyOnWriteArrayList<>();
+    private final SecureHash txId = SecureHash.randomSHA256();
+
+    private SecureHash record(Party borrower, List<Integer> iouValues, List<String> externalIds) {
+        batches.add(iouValues);
+        return txId;
+    }
+
+    @Test
+    public void aFullBatchIsDispatchedWithoutWaitingForTheWindow() throws Exception {
+        IOUBatcher batcher = new IOUBatcher(3, 60_000, lender, this::record);
+        List<CompletableFuture<StateRef>> results = ImmutableList.of(
+                batcher.submit(borrower, 1, null), batcher.submit(borrower, 2, null), batcher.submit(borrower, 3, "key"));
+
+        for (int i = 0; i < results.size(); i++) {
+            assertEquals(new StateRef(txId, i), results.get(i).get(5, TimeUnit.SECONDS));
+        }
+        assertEquals(ImmutableList.of(ImmutableList.of(1, 2, 3)), batches);
+    }
+
+    @Test
+    public void aPartialBatchIsDispatchedWhenTheWindowCloses() throws Exception {
+        IOUBatcher batcher = new IOUBatcher(10, 50, lender, this::record);
+        CompletableFuture<StateRef> first = batcher.submit(borrower, 1, null);
+        CompletableFuture<StateRef> second = batcher.submit(borrower, 2, null);
+
+        assertEquals(new StateRef(txId, 1), second.get(5, TimeUnit.SECONDS));
+        assertEquals(new StateRef(txId, 0), first.get(5, TimeUnit.SECONDS));
+        assertEquals(ImmutableList.of(ImmutableList.of(1, 2)), batches);
+    }
+
+    @Test
+    public void aFailedBatchFailsEveryRequestInIt() throws Exception {
+        IllegalStateException failure = new IllegalStateException("notary unavailable");
+        IOUBatcher batcher = new IOUBatcher(2, 60_000, lender, (borrower, values, ids) -> { throw failure; });
+        CompletableFuture<StateRef> first = batcher.submit(borrower, 1, null);
+        CompletableFuture<StateRef> second = batcher.submit(borrower, 2, null);
+
+        for (CompletableFuture<StateRef> result : ImmutableList.of(first, second)) {
+            try {
+                result.get(5, TimeUnit.SECONDS);
+                fail("Expected the batch to fail");
+            } catch (ExecutionException e) {
+                assertSame(failure, e.getCause());
+            }
+        }
+    }
+
+    @Test
+    public void anInvalidRequestIsRejectedWithoutJoiningTheBatch() throws Exception {
+        IOUBatcher batcher = new IOUBatcher(2, 60_000, lender, this::record);
+        CompletableFuture<StateRef> first = batcher.submit(borrower, 1, null);
+        CompletableFuture<StateRef> tooLarge = batcher.submit(borrower, 101, null);
+        CompletableFuture<StateRef> second = batcher.submit(borrower, 2, null);
+
+        assertTrue(tooLarge.isCompletedExceptionally());
+        try {
+            tooLarge.get();
+            fail("Expected the IOU to be rejected");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IllegalArgumentException);
+        }
+        assertEquals(new StateRef(txId, 1), second.get(5, TimeUnit.SECONDS));
+        assertEquals(new StateRef(txId, 0), first.get(5, TimeUnit.SECONDS));
+        assertEquals(ImmutableList.of(ImmutableList.of(1, 2)), batches);
+    }
+
+    @Test
+    public void closingFailsOpenBatchesAndLaterRequests() throws Exception {
+        IOUBatcher batcher = new IOUBatcher(10, 60_000, lender, this::record);
+        CompletableFuture<StateRef> waiting = batcher.submit(borrower, 1, null);
+        batcher.close();
+        CompletableFuture<StateRef> late = batcher.submit(borrower, 2, null);
+
+        for (CompletableFuture<StateRef> result : ImmutableList.of(waiting, late)) {
+            try {
+                result.get(5, TimeUnit.SECONDS);
+                fail("Expected the request to fail");
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof IllegalStateException);
+            }
+        }
+        assertTrue(batches.isEmpty());
+    }
+}
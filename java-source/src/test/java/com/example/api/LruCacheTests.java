@@ -0,0 +1,31 @@
+package com.example.api;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class LruCacheTests {
+    @Test
+    public void theLeastRecentlyReadEntryIsEvicted() {
+        LruCache<String, Integer> cache = new LruCache<>(2);
+        cache.put("a", 1);
+        cache.put("b", 2);
+        cache.get("a");
+        cache.put("c", 3);
+        assertEquals(Integer.valueOf(1), cache.get("a"));
+        assertNull(cache.get("b"));
+    }
+
+    @Test
+    public void aValueReadBeforeAnInvalidationIsNotCached() {
+        LruCache<String, Integer> cache = new LruCache<>(10);
+        long generation = cache.generation();
+        cache.invalidate("a");
+        cache.putIfUnchanged("a", 1, generation);
+        assertNull(cache.get("a"));
+
+        cache.putIfUnchanged("a", 2, cache.generation());
+        assertEquals(Integer.valueOf(2), cache.get("a"));
+    }
+}
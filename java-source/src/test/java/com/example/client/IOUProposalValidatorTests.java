@@ -0,0 +1,51 @@
+package com.example.client;
+
+import com.example.contract.IOUContract;
+import com.example.state.IOUState;
+import net.corda.core.contracts.UniqueIdentifier;
+import net.corda.core.identity.CordaX500Name;
+import net.corda.testing.core.TestIdentity;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class IOUProposalValidatorTests {
+    static private TestIdentity megaCorp = new TestIdentity(new CordaX500Name("MegaCorp", "London", "GB"));
+    static private TestIdentity miniCorp = new TestIdentity(new CordaX500Name("MiniCorp", "London", "GB"));
+
+    @Test
+    public void acceptsValidProposal() {
+        assertTrue(IOUProposalValidator.validate(proposal(100, megaCorp, miniCorp)).isEmpty());
+    }
+
+    @Test
+    public void rejectsNonPositiveValue() {
+        assertEquals(1, IOUProposalValidator.validate(proposal(0, megaCorp, miniCorp)).size());
+        assertEquals(1, IOUProposalValidator.validate(proposal(-1, megaCorp, miniCorp)).size());
+    }
+
+    @Test
+    public void rejectsValueAboveAcceptanceLimit() {
+        List<String> violations = IOUProposalValidator.validate(proposal(101, megaCorp, miniCorp));
+        assertEquals(1, violations.size());
+        assertTrue(violations.get(0).contains("over 100"));
+    }
+
+    @Test
+    public void rejectsLendingToSelfAndReportsEveryViolation() {
+        assertEquals(2, IOUProposalValidator.validate(proposal(0, megaCorp, megaCorp)).size());
+    }
+
+    @Test
+    public void reportsTheContractsOwnViolations() {
+        IOUState proposal = proposal(0, megaCorp, megaCorp);
+        assertEquals(IOUContract.check(proposal), IOUProposalValidator.validate(proposal));
+    }
+
+    private static IOUState proposal(int value, TestIdentity lender, TestIdentity borrower) {
+        return new IOUState(value, lender.getParty(), borrower.getParty(), new UniqueIdentifier());
+    }
+}
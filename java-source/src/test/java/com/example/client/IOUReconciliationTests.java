@@ -0,0 +1,53 @@
+package com.example.client;
+
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.Iterator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class IOUReconciliationTests {
+    private static final String LENDER = "O=PartyA,L=London,C=GB";
+    private static final String BORROWER = "O=PartyB,L=New York,C=US";
+
+    @Test
+    public void reportsMissingExtraAndMismatchedPositions() throws Exception {
+        Iterator<IOUReconciliation.Position> file = IOUReconciliation.csvPositions(new BufferedReader(new StringReader(
+                "linearId,lender,borrower,value\n"
+                        + "00000000-0000-0000-0000-000000000001,\"" + LENDER + "\",\"" + BORROWER + "\",10\n"
+                        + "00000000-0000-0000-0000-000000000002,\"" + LENDER + "\",\"" + BORROWER + "\",20\n"
+                        + "00000000-0000-0000-0000-000000000004,\"" + LENDER + "\",\"" + BORROWER + "\",40\n")));
+        Iterator<IOUReconciliation.Position> vault = Arrays.asList(
+                position("00000000-0000-0000-0000-000000000001", 10),
+                position("00000000-0000-0000-0000-000000000003", 30),
+                position("00000000-0000-0000-0000-000000000004", 41)).iterator();
+
+        StringWriter report = new StringWriter();
+        IOUReconciliation.Result result = IOUReconciliation.reconcile(file, vault, report);
+
+        assertEquals(1, result.matched);
+        assertEquals(1, result.missing);
+        assertEquals(1, result.extra);
+        assertEquals(1, result.mismatched);
+        assertTrue(report.toString().contains("missing,00000000-0000-0000-0000-000000000002"));
+        assertTrue(report.toString().contains("extra,00000000-0000-0000-0000-000000000003"));
+        assertTrue(report.toString().contains("mismatched,00000000-0000-0000-0000-000000000004"));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void rejectsUnsortedInput() throws Exception {
+        Iterator<IOUReconciliation.Position> file = Arrays.asList(
+                position("00000000-0000-0000-0000-000000000002", 20),
+                position("00000000-0000-0000-0000-000000000001", 10)).iterator();
+        IOUReconciliation.reconcile(file, Arrays.<IOUReconciliation.Position>asList().iterator(), new StringWriter());
+    }
+
+    private static IOUReconciliation.Position position(String linearId, int value) {
+        return new IOUReconciliation.Position(linearId, LENDER, BORROWER, value);
+    }
+}
@@ -0,0 +1,109 @@
+package com.example.flow;
+
+import com.google.common.collect.ImmutableList;
+import net.corda.core.concurrent.CordaFuture;
+import net.corda.core.flows.FlowLogic;
+import net.corda.core.identity.Party;
+import net.corda.core.transactions.SignedTransaction;
+import net.corda.testing.node.MockNetwork;
+import net.corda.testing.node.StartedMockNode;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Compares the checkpoints held by [ExampleFlow] and [LeanIOUFlow] while they wait on each other.
+ *
+ * The network is pumped one round at a time. After every round, while the flows are suspended waiting for messages,
+ * the checkpoints stored by both nodes are measured. A round can cover more than one suspension, so these are the
+ * bytes held at the end of each round, not the bytes written per suspension.
+ */
+public class CheckpointSizeTests {
+    private static final Logger logger = LoggerFactory.getLogger(CheckpointSizeTests.class);
+
+    private MockNetwork network;
+    private StartedMockNode a;
+    private StartedMockNode b;
+
+    @Before
+    public void setup() {
+        network = new MockNetwork(ImmutableList.of("com.example.contract", "com.example.schema"));
+        a = network.createPartyNode(null);
+        b = network.createPartyNode(null);
+        for (StartedMockNode node : ImmutableList.of(a, b)) {
+            node.registerInitiatedFlow(ExampleFlow.Acceptor.class);
+            node.registerInitiatedFlow(LeanIOUFlow.Acceptor.class);
+        }
+        network.runNetwork();
+    }
+
+    @After
+    public void tearDown() {
+        network.stopNodes();
+    }
+
+    @Test
+    public void leanFlowWritesNoLargerCheckpointsThanExampleFlow() throws Exception {
+        Party borrower = b.getInfo().getLegalIdentities().get(0);
+
+        List<Long> exampleSizes = checkpointSizesPerRound(new ExampleFlow.Initiator(1, borrower));
+        List<Long> leanSizes = checkpointSizesPerRound(new LeanIOUFlow.Initiator(1, borrower));
+
+        logger.info("Checkpoint bytes held after each network round (initiator + acceptor):");
+        logger.info("  ExampleFlow: {}", exampleSizes);
+        logger.info("  LeanIOUFlow: {}", leanSizes);
+
+        // Both flows suspend while waiting for the other side, so both must have been checkpointed.
+        assertFalse(exampleSizes.isEmpty());
+        assertFalse(leanSizes.isEmpty());
+        assertTrue("Largest checkpoint grew from " + Collections.max(exampleSizes) + " to " + Collections.max(leanSizes) + " bytes",
+                Collections.max(leanSizes) <= Collections.max(exampleSizes));
+        assertTrue("Checkpoint bytes over all rounds grew from " + sum(exampleSizes) + " to " + sum(leanSizes),
+                sum(leanSizes) <= sum(exampleSizes));
+    }
+
+    private List<Long> checkpointSizesPerRound(FlowLogic<SignedTransaction> flow) throws Exception {
+        CordaFuture<SignedTransaction> future = a.startFlow(flow);
+        List<Long> sizes = new ArrayList<>();
+        for (int round = 0; round < 100 && !future.isDone(); round++) {
+            network.runNetwork(1);
+            long bytes = checkpointBytes(a) + checkpointBytes(b);
+            if (bytes > 0) sizes.add(bytes);
+        }
+        future.get();
+        network.runNetwork();
+        // A finished flow leaves no checkpoint behind.
+        assertEquals(0L, checkpointBytes(a) + checkpointBytes(b));
+        return sizes;
+    }
+
+    private static long sum(List<Long> sizes) {
+        return sizes.stream().mapToLong(Long::longValue).sum();
+    }
+
+    private static long checkpointBytes(StartedMockNode node) {
+        return node.transaction(() -> {
+            String sql = "SELECT COALESCE(SUM(LENGTH(checkpoint_value)), 0) FROM node_checkpoints";
+            try (PreparedStatement statement = node.getServices().jdbcSession().prepareStatement(sql);
+                 ResultSet rs = statement.executeQuery()) {
+                rs.next();
+                return rs.getLong(1);
+            } catch (SQLException e) {
+                throw new RuntimeException("Could not measure checkpoints", e);
+            }
+        });
+    }
+}
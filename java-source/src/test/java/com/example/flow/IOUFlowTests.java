@@ -1,13 +1,21 @@
 package com.example.flow;
 
+import co.paralleluniverse.fibers.Suspendable;
+import com.example.contract.IOUContract;
+import com.example.service.IOUSummary;
 import com.example.state.IOUState;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
 import net.corda.core.concurrent.CordaFuture;
 import net.corda.core.contracts.ContractState;
 import net.corda.core.contracts.StateAndRef;
 import net.corda.core.contracts.TransactionState;
 import net.corda.core.contracts.TransactionVerificationException;
+import net.corda.core.contracts.UniqueIdentifier;
+import net.corda.core.flows.*;
+import net.corda.core.identity.Party;
 import net.corda.core.transactions.SignedTransaction;
+import net.corda.core.transactions.TransactionBuilder;
 import net.corda.testing.node.MockNetwork;
 import net.corda.testing.node.StartedMockNode;
 import org.junit.After;
@@ -15,25 +23,41 @@ import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
+import org.junit.rules.TemporaryFolder;
 
+import java.util.Arrays;
 import java.util.List;
 
 import static org.hamcrest.CoreMatchers.instanceOf;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 public class IOUFlowTests {
     private MockNetwork network;
     private StartedMockNode a;
     private StartedMockNode b;
+    private String eventLogDir;
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
 
     @Before
     public void setup() {
-        network = new MockNetwork(ImmutableList.of("com.example.contract", "com.example.schema"));
+        // The nodes' IOUEventLogServices would otherwise write their logs under the working directory.
+        eventLogDir = System.getProperty("example.eventLog.dir");
+        System.setProperty("example.eventLog.dir", folder.getRoot().toString());
+        network = new MockNetwork(ImmutableList.of("com.example.contract", "com.example.schema", "com.example.service"));
         a = network.createPartyNode(null);
         b = network.createPartyNode(null);
         // For real nodes this happens automatically, but we have to manually register the flow for tests.
         for (StartedMockNode node : ImmutableList.of(a, b)) {
             node.registerInitiatedFlow(ExampleFlow.Acceptor.class);
+            node.registerInitiatedFlow(ExampleFlow.TracedAcceptor.class);
+            node.registerInitiatedFlow(BatchIOUFlow.Acceptor.class);
+            node.registerInitiatedFlow(MultiIssueIOUFlow.Acceptor.class);
+            node.registerInitiatedFlow(ReissueIOUFlow.Acceptor.class);
+            node.registerInitiatedFlow(ExitOnlyAcceptor.class);
+            node.registerInitiatedFlow(DigestReconciliationFlow.Acceptor.class);
         }
         network.runNetwork();
     }
@@ -41,6 +65,8 @@ public class IOUFlowTests {
     @After
     public void tearDown() {
         network.stopNodes();
+        if (eventLogDir == null) System.clearProperty("example.eventLog.dir");
+        else System.setProperty("example.eventLog.dir", eventLogDir);
     }
 
     @Rule
@@ -91,6 +117,19 @@ public class IOUFlowTests {
         }
     }
 
+    @Test
+    public void tracedFlowRecordsTheTransactionInBothVaults() throws Exception {
+        ExampleFlow.TracedInitiator flow = new ExampleFlow.TracedInitiator(1, b.getInfo().getLegalIdentities().get(0), "request-key", "trace-1");
+        CordaFuture<SignedTransaction> future = a.startFlow(flow);
+        network.runNetwork();
+        SignedTransaction signedTx = future.get();
+
+        for (StartedMockNode node : ImmutableList.of(a, b)) {
+            assertEquals(signedTx, node.getServices().getValidatedTransactions().getTransaction(signedTx.getId()));
+        }
+        assertEquals("request-key", ((IOUState) signedTx.getTx().getOutputs().get(0).getData()).getLinearId().getExternalId());
+    }
+
     @Test
     public void recordedTransactionHasNoInputsAndASingleOutputTheInputIOU() throws Exception {
         Integer iouValue = 1;
@@ -133,4 +172,211 @@ public class IOUFlowTests {
             });
         }
     }
-}
\ No newline at end of file
+
+    @Test
+    public void flowRecordsTheRequestKeyAsTheIOUsExternalId() throws Exception {
+        ExampleFlow.Initiator flow = new ExampleFlow.Initiator(1, b.getInfo().getLegalIdentities().get(0), "request-1");
+        CordaFuture<SignedTransaction> future = a.startFlow(flow);
+        network.runNetwork();
+        SignedTransaction signedTx = future.get();
+
+        IOUState recordedState = (IOUState) signedTx.getTx().getOutputs().get(0).getData();
+        assertEquals("request-1", recordedState.getLinearId().getExternalId());
+    }
+
+    @Test
+    public void batchFlowRecordsOneOutputPerRequestInASingleTransaction() throws Exception {
+        BatchIOUFlow.Initiator flow = new BatchIOUFlow.Initiator(
+                ImmutableList.of(1, 2, 3), b.getInfo().getLegalIdentities().get(0), Arrays.asList("k1", null, "k3"));
+        CordaFuture<SignedTransaction> future = a.startFlow(flow);
+        network.runNetwork();
+        SignedTransaction signedTx = future.get();
+
+        List<TransactionState<ContractState>> txOutputs = signedTx.getTx().getOutputs();
+        assertEquals(3, txOutputs.size());
+        for (int i = 0; i < txOutputs.size(); i++) {
+            IOUState recordedState = (IOUState) txOutputs.get(i).getData();
+            assertEquals(Integer.valueOf(i + 1), recordedState.getValue());
+        }
+        assertEquals("k3", ((IOUState) txOutputs.get(2).getData()).getLinearId().getExternalId());
+    }
+
+    @Test
+    public void multiIssueFlowIssuesOneIOUToEachCounterpartyInOneTransaction() throws Exception {
+        StartedMockNode c = network.createPartyNode(null);
+        c.registerInitiatedFlow(MultiIssueIOUFlow.Acceptor.class);
+        network.runNetwork();
+
+        Party partyB = b.getInfo().getLegalIdentities().get(0);
+        Party partyC = c.getInfo().getLegalIdentities().get(0);
+        MultiIssueIOUFlow.Initiator flow = new MultiIssueIOUFlow.Initiator(5, ImmutableList.of(partyB, partyC));
+        CordaFuture<SignedTransaction> future = a.startFlow(flow);
+        network.runNetwork();
+        SignedTransaction signedTx = future.get();
+
+        signedTx.verifyRequiredSignatures();
+        for (StartedMockNode node : ImmutableList.of(a, b, c)) {
+            assertEquals(signedTx, node.getServices().getValidatedTransactions().getTransaction(signedTx.getId()));
+        }
+        List<TransactionState<ContractState>> txOutputs = signedTx.getTx().getOutputs();
+        assertEquals(partyB, ((IOUState) txOutputs.get(0).getData()).getBorrower());
+        assertEquals(partyC, ((IOUState) txOutputs.get(1).getData()).getBorrower());
+    }
+
+    @Test
+    public void reissueFlowReplacesTheIOUWithAnIdenticalOneWithoutInputs() throws Exception {
+        CordaFuture<SignedTransaction> issueFuture = a.startFlow(new ExampleFlow.Initiator(7, b.getInfo().getLegalIdentities().get(0)));
+        network.runNetwork();
+        IOUState issued = (IOUState) issueFuture.get().getTx().getOutputs().get(0).getData();
+
+        CordaFuture<SignedTransaction> reissueFuture = a.startFlow(new ReissueIOUFlow.Initiator(issued.getLinearId()));
+        network.runNetwork();
+        SignedTransaction reissueTx = reissueFuture.get();
+
+        assertTrue(reissueTx.getTx().getInputs().isEmpty());
+        for (StartedMockNode node : ImmutableList.of(a, b)) {
+            node.transaction(() -> {
+                List<StateAndRef<IOUState>> ious = node.getServices().getVaultService().queryBy(IOUState.class).getStates();
+                assertEquals(1, ious.size());
+                IOUState recordedState = ious.get(0).getState().getData();
+                assertEquals(reissueTx.getId(), ious.get(0).getRef().getTxhash());
+                assertEquals(issued.getLinearId(), recordedState.getLinearId());
+                assertEquals(issued.getValue(), recordedState.getValue());
+                return null;
+            });
+        }
+    }
+
+    @Test
+    public void reissueFlowResumesFromARecordedExit() throws Exception {
+        CordaFuture<SignedTransaction> issueFuture = a.startFlow(new ExampleFlow.Initiator(7, b.getInfo().getLegalIdentities().get(0)));
+        network.runNetwork();
+        StateAndRef<IOUState> issued = issueFuture.get().getTx().outRef(0);
+
+        // Leave the IOU as a re-issuance that failed after its exit was notarised.
+        CordaFuture<SignedTransaction> exitFuture = a.startFlow(new ExitOnly(issued));
+        network.runNetwork();
+        SignedTransaction exitTx = exitFuture.get();
+
+        CordaFuture<SignedTransaction> resumeFuture = b.startFlow(new ReissueIOUFlow.Initiator(exitTx.getId()));
+        network.runNetwork();
+        SignedTransaction reissueTx = resumeFuture.get();
+
+        assertTrue(reissueTx.getTx().getInputs().isEmpty());
+        for (StartedMockNode node : ImmutableList.of(a, b)) {
+            node.transaction(() -> {
+                List<StateAndRef<IOUState>> ious = node.getServices().getVaultService().queryBy(IOUState.class).getStates();
+                assertEquals(1, ious.size());
+                assertEquals(reissueTx.getId(), ious.get(0).getRef().getTxhash());
+                assertEquals(issued.getState().getData().getLinearId(), ious.get(0).getState().getData().getLinearId());
+                return null;
+            });
+        }
+
+        // Resuming again must not issue the IOU twice.
+        CordaFuture<SignedTransaction> secondResume = a.startFlow(new ReissueIOUFlow.Initiator(exitTx.getId()));
+        network.runNetwork();
+        exception.expectCause(instanceOf(FlowException.class));
+        secondResume.get();
+    }
+
+    @Test
+    public void summaryServiceAggregatesRecordedIOUsPerCounterparty() throws Exception {
+        Party partyA = a.getInfo().getLegalIdentities().get(0);
+        Party partyB = b.getInfo().getLegalIdentities().get(0);
+        a.startFlow(new ExampleFlow.Initiator(3, partyB));
+        a.startFlow(new ExampleFlow.Initiator(4, partyB));
+        network.runNetwork();
+
+        CordaFuture<List<IOUSummary>> lenderSummary = a.startFlow(new IOUSummaryFlows.ByCounterparty());
+        CordaFuture<List<IOUSummary>> borrowerSummary = b.startFlow(new IOUSummaryFlows.ByCounterparty());
+        network.runNetwork();
+
+        assertEquals(1, lenderSummary.get().size());
+        assertEquals(partyB.getName().toString(), lenderSummary.get().get(0).getCounterparty());
+        assertEquals(2L, lenderSummary.get().get(0).getCount());
+        assertEquals(7L, lenderSummary.get().get(0).getTotalValue());
+        assertEquals(partyA.getName().toString(), borrowerSummary.get().get(0).getCounterparty());
+        assertEquals(7L, borrowerSummary.get().get(0).getTotalValue());
+    }
+
+    @Test
+    public void digestReconciliationFindsIOUsOnlyOneSideHolds() throws Exception {
+        Party partyA = a.getInfo().getLegalIdentities().get(0);
+        Party partyB = b.getInfo().getLegalIdentities().get(0);
+        a.startFlow(new ExampleFlow.Initiator(3, partyB));
+        a.startFlow(new ExampleFlow.Initiator(4, partyB));
+        network.runNetwork();
+
+        CordaFuture<DigestReconciliationFlow.Report> agreed = a.startFlow(new DigestReconciliationFlow.Initiator(partyB));
+        network.runNetwork();
+        assertTrue(agreed.get().isInAgreement());
+        assertEquals(1, agreed.get().getRoundTrips());
+
+        // Record an IOU in A's vault alone, bypassing the Acceptor and the notary.
+        IOUState unilateral = new IOUState(5, partyA, partyB, new UniqueIdentifier());
+        a.transaction(() -> {
+            TransactionBuilder txBuilder = new TransactionBuilder(network.getDefaultNotaryNode().getInfo().getLegalIdentities().get(0))
+                    .addOutputState(unilateral, IOUContract.IOU_CONTRACT_ID)
+                    .addCommand(new IOUContract.Commands.Create(), partyA.getOwningKey(), partyB.getOwningKey());
+            a.getServices().recordTransactions(a.getServices().signInitialTransaction(txBuilder));
+            return null;
+        });
+
+        CordaFuture<DigestReconciliationFlow.Report> diverged = a.startFlow(new DigestReconciliationFlow.Initiator(partyB));
+        network.runNetwork();
+        assertEquals(ImmutableList.of(unilateral.getLinearId()), diverged.get().getOnlyOurs());
+        assertTrue(diverged.get().getOnlyTheirs().isEmpty());
+        assertTrue(diverged.get().getDiffering().isEmpty());
+        assertEquals(3, diverged.get().getRoundTrips());
+
+        // Rebuilding A's digests from its vault finds the same difference.
+        CordaFuture<Void> rebuilt = a.startFlow(new DigestReconciliationFlow.Rebuild());
+        network.runNetwork();
+        rebuilt.get();
+        CordaFuture<DigestReconciliationFlow.Report> afterRebuild = a.startFlow(new DigestReconciliationFlow.Initiator(partyB));
+        network.runNetwork();
+        assertEquals(ImmutableList.of(unilateral.getLinearId()), afterRebuild.get().getOnlyOurs());
+    }
+
+    // Exits an IOU without re-issuing it, as ReissueIOUFlow leaves it when the re-issuance fails.
+    @InitiatingFlow
+    public static class ExitOnly extends FlowLogic<SignedTransaction> {
+        private final StateAndRef<IOUState> iou;
+
+        public ExitOnly(StateAndRef<IOUState> iou) {
+            this.iou = iou;
+        }
+
+        @Suspendable
+        @Override
+        public SignedTransaction call() throws FlowException {
+            final IOUState state = iou.getState().getData();
+            final TransactionBuilder builder = new TransactionBuilder(iou.getState().getNotary())
+                    .addInputState(iou)
+                    .addCommand(new IOUContract.Commands.Exit(), state.getLender().getOwningKey(), state.getBorrower().getOwningKey());
+            final FlowSession session = initiateFlow(state.getBorrower());
+            final SignedTransaction partSignedTx = getServiceHub().signInitialTransaction(builder);
+            return subFlow(new FinalityFlow(subFlow(new CollectSignaturesFlow(partSignedTx, ImmutableSet.of(session)))));
+        }
+    }
+
+    @InitiatedBy(ExitOnly.class)
+    public static class ExitOnlyAcceptor extends FlowLogic<SignedTransaction> {
+        private final FlowSession session;
+
+        public ExitOnlyAcceptor(FlowSession session) {
+            this.session = session;
+        }
+
+        @Suspendable
+        @Override
+        public SignedTransaction call() throws FlowException {
+            return subFlow(new SignTransactionFlow(session, SignTransactionFlow.Companion.tracker()) {
+                @Override
+                protected void checkTransaction(SignedTransaction stx) {
+                }
+            });
+        }
+    }
+}
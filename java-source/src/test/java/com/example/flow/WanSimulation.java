@@ -0,0 +1,187 @@
+package com.example.flow;
+
+import net.corda.core.concurrent.CordaFuture;
+import net.corda.testing.node.InMemoryMessagingNetwork;
+import net.corda.testing.node.StartedMockNode;
+
+import java.time.Instant;
+import java.util.*;
+
+/**
+ * Replays a [MockNetwork]'s message traffic on a virtual clock with per-link latency, jitter and bandwidth, so that
+ * flows can be compared under WAN conditions while the test itself runs at full speed.
+ *
+ * Messages are delivered one at a time with pumpReceive(). Each node has a virtual clock. A message leaves at its
+ * sender's clock as it stood when the sender finished the step that sent it, and is transmitted once the link is free
+ * in that direction: each direction of a link sends one message at a time, at the link's bandwidth. It then arrives
+ * after the link's latency plus a random jitter. The recipient's clock moves to that arrival time (if later) plus the
+ * real time it spent processing the message. A flow's latency is its initiator's clock when it completes.
+ *
+ * A message is matched to the step that sent it by its debug timestamp, which the messaging layer takes when the
+ * message is created. Each step is given wall-clock time of its own for this: the next step does not start until the
+ * clock has moved on. Messages created before [run] started are sent at virtual time zero.
+ *
+ * Jitter is drawn from a seeded random source, so a given scenario always produces the same figures.
+ */
+public class WanSimulation {
+    /**
+     * The characteristics of a network link, in both directions.
+     */
+    public static class Link {
+        final double latencyMillis;
+        final double jitterMillis;
+        final double bytesPerMilli;
+
+        public Link(double latencyMillis, double jitterMillis, long bandwidthBytesPerSecond) {
+            this.latencyMillis = latencyMillis;
+            this.jitterMillis = jitterMillis;
+            this.bytesPerMilli = bandwidthBytesPerSecond / 1000.0;
+        }
+
+        double transmissionMillis(int bytes) {
+            return bytes / bytesPerMilli;
+        }
+
+        double propagationMillis(Random random) {
+            return latencyMillis + random.nextDouble() * jitterMillis;
+        }
+    }
+
+    /**
+     * The outcome of running a set of flows.
+     */
+    public static class Result {
+        public final int flows;
+        public final int messages;
+        public final long bytes;
+        public final double meanLatencyMillis;
+        public final double maxLatencyMillis;
+        public final double flowsPerSecond;
+
+        Result(int flows, int messages, long bytes, double meanLatencyMillis, double maxLatencyMillis, double flowsPerSecond) {
+            this.flows = flows;
+            this.messages = messages;
+            this.bytes = bytes;
+            this.meanLatencyMillis = meanLatencyMillis;
+            this.maxLatencyMillis = maxLatencyMillis;
+            this.flowsPerSecond = flowsPerSecond;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d flows, %.1f msgs/flow, %.0f bytes/flow, latency mean %.1f ms max %.1f ms, %.2f flows/s",
+                    flows, (double) messages / flows, (double) bytes / flows, meanLatencyMillis, maxLatencyMillis, flowsPerSecond);
+        }
+    }
+
+    private final List<StartedMockNode> nodes;
+    private final Link defaultLink;
+    private final Map<String, Link> links = new HashMap<>();
+    private final Random random;
+
+    /**
+     * @param nodes every node on the network, including the notary.
+     */
+    public WanSimulation(List<StartedMockNode> nodes, Link defaultLink, long seed) {
+        this.nodes = nodes;
+        this.defaultLink = defaultLink;
+        this.random = new Random(seed);
+    }
+
+    /**
+     * Overrides the link between two nodes.
+     */
+    public WanSimulation withLink(StartedMockNode x, StartedMockNode y, Link link) {
+        links.put(linkKey(x.getId(), y.getId()), link);
+        return this;
+    }
+
+    /**
+     * Pumps the network until every one of [futures] has completed, and reports their simulated latency.
+     * All flows are started at virtual time zero.
+     */
+    public <T> Result run(StartedMockNode initiator, List<CordaFuture<T>> futures) throws Exception {
+        final Map<Integer, Double> clocks = new HashMap<>();
+        final Map<Integer, List<Step>> steps = new HashMap<>();
+        for (StartedMockNode node : nodes) {
+            clocks.put(node.getId(), 0.0);
+            steps.put(node.getId(), new ArrayList<>());
+        }
+        // When each direction of each link finishes transmitting the messages queued on it so far.
+        final Map<String, Double> busyUntil = new HashMap<>();
+        final Map<CordaFuture<T>, Double> completedAt = new HashMap<>();
+        int messages = 0;
+        long bytes = 0;
+
+        boolean delivered = true;
+        while (delivered) {
+            delivered = false;
+            for (StartedMockNode node : nodes) {
+                final Instant stepStart = Instant.now();
+                final long processingStart = System.nanoTime();
+                final InMemoryMessagingNetwork.MessageTransfer transfer = node.pumpReceive(false);
+                if (transfer == null) continue;
+                final double processingMillis = (System.nanoTime() - processingStart) / 1e6;
+                delivered = true;
+
+                final int senderId = transfer.getSender().getId();
+                final int size = transfer.getMessage().getData().getSize();
+                final Link link = linkBetween(senderId, node.getId());
+                final String direction = senderId + ">" + node.getId();
+                final double sent = sentAt(steps.getOrDefault(senderId, Collections.emptyList()), transfer.getMessage().getDebugTimestamp());
+                final double transmitted = Math.max(sent, busyUntil.getOrDefault(direction, 0.0)) + link.transmissionMillis(size);
+                busyUntil.put(direction, transmitted);
+                final double arrival = transmitted + link.propagationMillis(random);
+                clocks.put(node.getId(), Math.max(clocks.get(node.getId()), arrival) + processingMillis);
+                messages++;
+                bytes += size;
+
+                final Instant stepEnd = Instant.now();
+                steps.get(node.getId()).add(new Step(stepStart, clocks.get(node.getId())));
+                // Keep steps apart on the wall clock, so that every message timestamp falls within one step.
+                while (!Instant.now().isAfter(stepEnd)) Thread.yield();
+
+                for (CordaFuture<T> future : futures) {
+                    if (future.isDone() && !completedAt.containsKey(future)) {
+                        completedAt.put(future, clocks.get(initiator.getId()));
+                    }
+                }
+            }
+        }
+
+        for (CordaFuture<T> future : futures) {
+            future.get();
+        }
+        final DoubleSummaryStatistics latency = completedAt.values().stream().mapToDouble(Double::doubleValue).summaryStatistics();
+        final double makespan = Math.max(latency.getMax(), 1e-9);
+        return new Result(futures.size(), messages, bytes, latency.getAverage(), latency.getMax(), futures.size() / (makespan / 1000.0));
+    }
+
+    // The sender's clock at the end of the step that created a message stamped [timestamp].
+    private static double sentAt(List<Step> senderSteps, Instant timestamp) {
+        for (int i = senderSteps.size() - 1; i >= 0; i--) {
+            final Step step = senderSteps.get(i);
+            if (!timestamp.isBefore(step.start)) return step.clockAfter;
+        }
+        return 0.0;
+    }
+
+    private Link linkBetween(int x, int y) {
+        return links.getOrDefault(linkKey(x, y), defaultLink);
+    }
+
+    private static String linkKey(int x, int y) {
+        return Math.min(x, y) + "-" + Math.max(x, y);
+    }
+
+    // One pumpReceive() by a node: when it started on the wall clock, and the node's virtual clock once it finished.
+    private static final class Step {
+        final Instant start;
+        final double clockAfter;
+
+        Step(Instant start, double clockAfter) {
+            this.start = start;
+            this.clockAfter = clockAfter;
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package com.example.flow;
+
+import com.google.common.collect.ImmutableList;
+import net.corda.core.concurrent.CordaFuture;
+import net.corda.core.flows.FlowLogic;
+import net.corda.core.identity.Party;
+import net.corda.core.transactions.SignedTransaction;
+import net.corda.testing.node.MockNetwork;
+import net.corda.testing.node.StartedMockNode;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Measures [ExampleFlow] latency and throughput over simulated WAN links using [WanSimulation].
+ *
+ * The lender and notary share a region; the borrower is on another continent.
+ */
+public class WanSimulationTests {
+    private static final Logger logger = LoggerFactory.getLogger(WanSimulationTests.class);
+    private static final WanSimulation.Link REGIONAL = new WanSimulation.Link(5, 2, 100_000_000L);
+    private static final WanSimulation.Link INTERCONTINENTAL = new WanSimulation.Link(120, 30, 1_000_000L);
+
+    private MockNetwork network;
+    private StartedMockNode notary;
+    private StartedMockNode a;
+    private StartedMockNode b;
+
+    @Before
+    public void setup() {
+        network = new MockNetwork(ImmutableList.of("com.example.contract", "com.example.schema"));
+        a = network.createPartyNode(null);
+        b = network.createPartyNode(null);
+        notary = network.getDefaultNotaryNode();
+        for (StartedMockNode node : ImmutableList.of(a, b)) {
+            node.registerInitiatedFlow(ExampleFlow.Acceptor.class);
+            node.registerInitiatedFlow(LeanIOUFlow.Acceptor.class);
+        }
+        network.runNetwork();
+    }
+
+    @After
+    public void tearDown() {
+        network.stopNodes();
+    }
+
+    @Test
+    public void exampleFlowLatencyIsDominatedByRoundTripsToTheBorrower() throws Exception {
+        Party borrower = b.getInfo().getLegalIdentities().get(0);
+
+        WanSimulation.Result single = simulation().run(a, start(1, value -> new ExampleFlow.Initiator(value, borrower)));
+        WanSimulation.Result concurrent = simulation().run(a, start(20, value -> new ExampleFlow.Initiator(value, borrower)));
+        WanSimulation.Result lean = simulation().run(a, start(20, value -> new LeanIOUFlow.Initiator(value, borrower)));
+
+        logger.info("Simulated WAN (lender/notary regional, borrower intercontinental):");
+        logger.info("  ExampleFlow x1:  {}", single);
+        logger.info("  ExampleFlow x20: {}", concurrent);
+        logger.info("  LeanIOUFlow x20: {}", lean);
+
+        assertEquals(1, single.flows);
+        assertEquals(20, concurrent.flows);
+        assertEquals(20, lean.flows);
+        assertTrue(single.messages > 0 && single.bytes > 0);
+        // The borrower has to receive the proposal and send back its signature, i.e. at least one slow round trip.
+        assertTrue(single.meanLatencyMillis >= 2 * INTERCONTINENTAL.latencyMillis);
+        // Flows in flight overlap their round trips, so throughput beats running them one after another.
+        assertTrue(concurrent.flowsPerSecond > single.flowsPerSecond);
+        // Concurrent flows queue for the same links, so the slowest of them takes longer than a flow on its own.
+        assertTrue(concurrent.maxLatencyMillis > single.maxLatencyMillis);
+    }
+
+    @Test
+    public void flowsShareALinksBandwidth() throws Exception {
+        Party borrower = b.getInfo().getLegalIdentities().get(0);
+        WanSimulation.Link narrow = new WanSimulation.Link(120, 0, 100_000L);
+
+        WanSimulation.Result result = new WanSimulation(ImmutableList.of(notary, a, b), REGIONAL, 42L)
+                .withLink(a, b, narrow)
+                .withLink(notary, b, narrow)
+                .run(a, start(20, value -> new ExampleFlow.Initiator(value, borrower)));
+        logger.info("ExampleFlow x20 over a 100 KB/s link to the borrower: {}", result);
+
+        // The last flow can't finish before all 20 proposals have crossed the link one at a time. Each proposal is a
+        // signed transaction of well over 1 KB, i.e. over 10 ms at 100 KB/s.
+        double proposalsMillis = 20 * narrow.transmissionMillis(1000);
+        assertTrue(result.maxLatencyMillis >= narrow.latencyMillis + proposalsMillis);
+    }
+
+    private WanSimulation simulation() {
+        return new WanSimulation(ImmutableList.of(notary, a, b), REGIONAL, 42L)
+                .withLink(a, b, INTERCONTINENTAL)
+                .withLink(notary, b, INTERCONTINENTAL);
+    }
+
+    private List<CordaFuture<SignedTransaction>> start(int count, Function<Integer, FlowLogic<SignedTransaction>> flow) {
+        List<CordaFuture<SignedTransaction>> futures = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            futures.add(a.startFlow(flow.apply(1 + i % 100)));
+        }
+        return futures;
+    }
+}
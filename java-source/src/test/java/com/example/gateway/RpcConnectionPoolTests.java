@@ -0,0 +1,49 @@
+package com.example.gateway;
+
+import com.google.common.collect.ImmutableList;
+import net.corda.core.messaging.CordaRPCOps;
+import org.junit.Test;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class RpcConnectionPoolTests {
+    private final List<Integer> calls = new ArrayList<>();
+
+    // A stand-in for a connection's proxy that records which connection was called and answers with its index.
+    private CordaRPCOps connection(int index) {
+        return (CordaRPCOps) Proxy.newProxyInstance(CordaRPCOps.class.getClassLoader(), new Class<?>[]{CordaRPCOps.class}, (proxy, method, args) -> {
+            calls.add(index);
+            if (method.getName().equals("clearNetworkMapCache")) throw new IllegalStateException("connection " + index + " failed");
+            return index;
+        });
+    }
+
+    @Test
+    public void callsAreSpreadOverTheConnectionsInTurn() throws Exception {
+        RpcConnectionPool pool = new RpcConnectionPool(ImmutableList.of(connection(0), connection(1), connection(2)), ImmutableList.of());
+        for (int i = 0; i < 6; i++) {
+            assertEquals(i % 3, pool.getProxy().getProtocolVersion());
+        }
+        assertEquals(ImmutableList.of(0, 1, 2, 0, 1, 2), calls);
+    }
+
+    @Test
+    public void exceptionsReachTheCallerUnwrapped() throws Exception {
+        RpcConnectionPool pool = new RpcConnectionPool(ImmutableList.of(connection(0)), ImmutableList.of());
+        try {
+            pool.getProxy().clearNetworkMapCache();
+            fail("Expected the connection's exception");
+        } catch (IllegalStateException e) {
+            assertEquals("connection 0 failed", e.getMessage());
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void aPoolNeedsAConnection() throws Exception {
+        new RpcConnectionPool(ImmutableList.of(), ImmutableList.of());
+    }
+}
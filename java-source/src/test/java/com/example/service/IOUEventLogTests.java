@@ -0,0 +1,56 @@
+package com.example.service;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class IOUEventLogTests {
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void segmentsRollBySizeAndReadersResumeFromAnOffset() throws Exception {
+        Path directory = folder.getRoot().toPath();
+        try (IOUEventLog log = new IOUEventLog(directory, 100)) {
+            for (int i = 0; i < 10; i++) {
+                assertEquals(i, log.append("\"value\":" + i));
+            }
+        }
+        assertTrue(IOUEventLog.segments(directory).size() > 1);
+
+        List<String> records = new ArrayList<>();
+        IOUEventLogReader reader = new IOUEventLogReader(directory);
+        assertEquals(10L, reader.readFrom(7, records::add));
+        assertEquals(3, records.size());
+        assertEquals("{\"offset\":7,\"value\":7}", records.get(0));
+    }
+
+    @Test
+    public void reopeningContinuesOffsetsAndDropsATornRecord() throws Exception {
+        Path directory = folder.getRoot().toPath();
+        try (IOUEventLog log = new IOUEventLog(directory, 1024)) {
+            log.append("\"value\":0");
+            log.append("\"value\":1");
+        }
+        Path segment = IOUEventLog.segments(directory).get(0);
+        Files.write(segment, "{\"offset\":2,\"val".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+
+        try (IOUEventLog log = new IOUEventLog(directory, 1024)) {
+            assertEquals(2L, log.append("\"value\":2"));
+        }
+        List<String> records = new ArrayList<>();
+        new IOUEventLogReader(directory).readFrom(0, records::add);
+        assertEquals(3, records.size());
+        assertEquals("{\"offset\":2,\"value\":2}", records.get(2));
+    }
+}
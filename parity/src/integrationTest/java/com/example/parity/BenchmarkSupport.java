@@ -0,0 +1,101 @@
+package com.example.parity;
+
+import com.example.flow.ExampleFlow;
+import net.corda.core.concurrent.CordaFuture;
+import net.corda.core.identity.Party;
+import net.corda.core.transactions.SignedTransaction;
+import net.corda.testing.driver.DriverDSL;
+import net.corda.testing.driver.DriverParameters;
+import net.corda.testing.driver.NodeHandle;
+import net.corda.testing.node.StartedMockNode;
+import okhttp3.Dispatcher;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Set-up and load generation shared by the benchmarks: driver networks with a webserver and an HTTP client, and
+ * batches of ExampleFlows on a MockNetwork.
+ *
+ * Like [ParityBenchmark], this file is compiled into the integration tests of both java-source and kotlin-source, so
+ * it only uses what the two CorDapps have in common.
+ */
+public final class BenchmarkSupport {
+    private BenchmarkSupport() { }
+
+    /**
+     * Driver parameters for nodes started in this JVM, with the CorDapps in [cordappPackages].
+     */
+    public static DriverParameters inProcessDriver(List<String> cordappPackages) {
+        return new DriverParameters().withStartNodesInProcess(true).withExtraCordappPackagesToScan(cordappPackages);
+    }
+
+    /**
+     * An HTTP client that allows [maxRequests] concurrent calls and waits up to [readTimeoutMinutes] for a response.
+     */
+    public static OkHttpClient httpClient(int maxRequests, long readTimeoutMinutes) {
+        final Dispatcher dispatcher = new Dispatcher();
+        dispatcher.setMaxRequests(maxRequests);
+        dispatcher.setMaxRequestsPerHost(maxRequests);
+        return new OkHttpClient.Builder().dispatcher(dispatcher).readTimeout(readTimeoutMinutes, TimeUnit.MINUTES).build();
+    }
+
+    /**
+     * Starts [node]'s webserver, waits for any start-up warm-up to finish, and returns its base URL, ending in /api/.
+     * Only java-source has a ready endpoint; a 404 means there is none.
+     */
+    public static String startWebserver(DriverDSL dsl, NodeHandle node, OkHttpClient client) throws Exception {
+        final String baseUrl = "http://" + dsl.startWebserver(node).get().getListenAddress() + "/api/";
+        while (true) {
+            try (Response response = client.newCall(new Request.Builder().url(baseUrl + "example/ready").build()).execute()) {
+                if (response.code() != 503) return baseUrl;
+            }
+            TimeUnit.MILLISECONDS.sleep(500);
+        }
+    }
+
+    /**
+     * Runs [count] ExampleFlows from [initiator] to [borrower], [batch] at a time, and returns the number of messages
+     * delivered. Each batch is pumped to completion with [pumpUntilQuiet] before the next starts, and a failed flow
+     * fails the run.
+     */
+    public static long runExampleFlows(StartedMockNode initiator, List<StartedMockNode> nodes, Party borrower, int count, int batch) throws Exception {
+        long messages = 0;
+        for (int started = 0; started < count; started += batch) {
+            final List<CordaFuture<SignedTransaction>> futures = new ArrayList<>();
+            for (int i = started; i < Math.min(count, started + batch); i++) {
+                futures.add(initiator.startFlow(new ExampleFlow.Initiator(1 + i % 100, borrower)));
+            }
+            messages += pumpUntilQuiet(nodes);
+            for (CordaFuture<SignedTransaction> future : futures) {
+                assertEquals(1, future.get().getTx().getOutputStates().size());
+            }
+        }
+        return messages;
+    }
+
+    /**
+     * Delivers one message to each of [nodes] in turn until none has anything left to receive, so that every run sends
+     * the same messages in the same order. Returns the number delivered.
+     */
+    public static long pumpUntilQuiet(List<StartedMockNode> nodes) {
+        long messages = 0;
+        boolean delivered = true;
+        while (delivered) {
+            delivered = false;
+            for (StartedMockNode node : nodes) {
+                if (node.pumpReceive(false) != null) {
+                    messages++;
+                    delivered = true;
+                }
+            }
+        }
+        return messages;
+    }
+}
@@ -0,0 +1,182 @@
+package com.example.parity;
+
+import com.example.contract.IOUContract;
+import com.example.flow.ExampleFlow;
+import com.example.state.IOUState;
+import com.google.common.collect.ImmutableList;
+import net.corda.core.contracts.UniqueIdentifier;
+import net.corda.core.identity.CordaX500Name;
+import net.corda.core.identity.Party;
+import net.corda.core.transactions.LedgerTransaction;
+import net.corda.core.transactions.TransactionBuilder;
+import net.corda.testing.core.TestIdentity;
+import net.corda.testing.driver.NodeHandle;
+import net.corda.testing.driver.NodeParameters;
+import net.corda.testing.node.MockNetwork;
+import net.corda.testing.node.MockServices;
+import net.corda.testing.node.StartedMockNode;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URLEncoder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+
+import static net.corda.testing.driver.Driver.driver;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * The same contract, flow and endpoint workloads, compiled into the integration tests of both java-source and
+ * kotlin-source so that the two CorDapps can be compared like for like.
+ *
+ * This file is only written against what the two modules have in common: the IOUState constructor, IOUContract and
+ * its Create command, ExampleFlow.Initiator(value, party) and the me, peers, ious and create-iou endpoints. The
+ * workloads are:
+ * - contract: IOUContract.verify() on a prepared LedgerTransaction, timed per call;
+ * - flow: ExampleFlow on a MockNetwork, run in batches and pumped one message per node at a time;
+ * - api: HTTP calls to a driver node's webserver, one at a time, timed per endpoint.
+ *
+ * Each run writes build/reports/parity.properties in its module. The root parityReport task runs both modules'
+ * parityBenchmark tasks and tabulates the two files side by side.
+ *
+ * java-source also carries features the Kotlin CorDapp lacks. The api workload loads each module's whole CorDapp, so
+ * java-source's api figures include the cost of its tracing, admission control, caches and vault services. The flow
+ * workload loads only the contract and schema packages, which both modules have, so none of java-source's vault
+ * services run and its flow figures do not include their cost. Its flows' tracing still runs.
+ *
+ * Skipped unless example.parity.module is set, which the parityBenchmark task does. Optional settings:
+ * example.parity.verifications (default 100000), example.parity.flows (default 1000) and example.parity.requests
+ * (default 200 per endpoint).
+ */
+public class ParityBenchmark {
+    private static final Logger logger = LoggerFactory.getLogger(ParityBenchmark.class);
+    private static final Path REPORT = Paths.get("build", "reports", "parity.properties");
+    private static final String IOU_CONTRACT_ID = "com.example.contract.IOUContract";
+    private static final int FLOW_BATCH = 50;
+    // Both modules' CorDapps live under com.example.
+    private static final List<String> CORDAPP_PACKAGES = ImmutableList.of("com.example");
+    private static final int IOUS = 100;
+
+    private final TestIdentity bankA = new TestIdentity(new CordaX500Name("BankA", "", "GB"));
+    private final TestIdentity bankB = new TestIdentity(new CordaX500Name("BankB", "", "US"));
+    private final TestIdentity notary = new TestIdentity(new CordaX500Name("Notary", "", "GB"));
+    private final Properties results = new Properties();
+
+    @Test
+    public void parityBenchmark() throws Exception {
+        final String module = System.getProperty("example.parity.module");
+        assumeTrue("Run the parityBenchmark task to compare the Java and Kotlin CorDapps", module != null);
+        results.setProperty("module", module);
+
+        contractWorkload(Integer.getInteger("example.parity.verifications", 100_000));
+        flowWorkload(Integer.getInteger("example.parity.flows", 1000));
+        apiWorkload(Integer.getInteger("example.parity.requests", 200));
+
+        Files.createDirectories(REPORT.getParent());
+        try (OutputStream out = Files.newOutputStream(REPORT)) {
+            results.store(out, "CorDapp parity benchmark");
+        }
+        logger.info("Parity benchmark for {}: {} us per contract verification, {} flows/s; report written to {}", module,
+                results.getProperty("contract.verifyMicros"), results.getProperty("flow.flowsPerSecond"), REPORT.toAbsolutePath());
+    }
+
+    private void contractWorkload(int verifications) {
+        final MockServices services = new MockServices(ImmutableList.of("com.example.contract"), bankA);
+        final IOUState iou = new IOUState(1, bankA.getParty(), bankB.getParty(), new UniqueIdentifier());
+        final LedgerTransaction ltx = new TransactionBuilder(notary.getParty())
+                .addOutputState(iou, IOU_CONTRACT_ID)
+                .addCommand(new IOUContract.Commands.Create(), bankA.getPublicKey(), bankB.getPublicKey())
+                .toLedgerTransaction(services);
+        final IOUContract contract = new IOUContract();
+
+        for (int i = 0; i < verifications / 10; i++) contract.verify(ltx);
+        final long start = System.nanoTime();
+        for (int i = 0; i < verifications; i++) contract.verify(ltx);
+        results.setProperty("contract.verifyMicros", String.valueOf((System.nanoTime() - start) / 1e3 / verifications));
+    }
+
+    private void flowWorkload(int flows) throws Exception {
+        final MockNetwork network = new MockNetwork(ImmutableList.of("com.example.contract", "com.example.schema"));
+        try {
+            final StartedMockNode a = network.createPartyNode(null);
+            final StartedMockNode b = network.createPartyNode(null);
+            for (StartedMockNode node : ImmutableList.of(a, b)) {
+                node.registerInitiatedFlow(ExampleFlow.Acceptor.class);
+            }
+            network.runNetwork();
+            final List<StartedMockNode> nodes = ImmutableList.of(network.getDefaultNotaryNode(), a, b);
+            final Party borrower = b.getInfo().getLegalIdentities().get(0);
+
+            BenchmarkSupport.runExampleFlows(a, nodes, borrower, flows / 10, FLOW_BATCH);
+            final long start = System.nanoTime();
+            final long messages = BenchmarkSupport.runExampleFlows(a, nodes, borrower, flows, FLOW_BATCH);
+            results.setProperty("flow.flowsPerSecond", String.valueOf(flows / ((System.nanoTime() - start) / 1e9)));
+            results.setProperty("flow.messagesPerFlow", String.valueOf((double) messages / flows));
+        } finally {
+            network.stopNodes();
+        }
+    }
+
+    private void apiWorkload(int requests) {
+        driver(BenchmarkSupport.inProcessDriver(CORDAPP_PACKAGES), dsl -> {
+            try {
+                final NodeHandle nodeA = dsl.startNode(new NodeParameters().withProvidedName(bankA.getName())).get();
+                dsl.startNode(new NodeParameters().withProvidedName(bankB.getName())).get();
+                final OkHttpClient client = BenchmarkSupport.httpClient(1, 1);
+                final String baseUrl = BenchmarkSupport.startWebserver(dsl, nodeA, client) + "example/";
+
+                // Fewer than 200 IOUs, as neither module pages the ious endpoint.
+                final String create = "create-iou?partyName=" + URLEncoder.encode(bankB.getName().toString(), "UTF-8") + "&iouValue=";
+                final List<Long> creates = new ArrayList<>();
+                for (int i = 0; i < IOUS; i++) creates.add(call(client, "PUT", baseUrl + create + (1 + i % 100)));
+                record("api.createIou", creates.subList(IOUS / 10, IOUS));
+
+                for (String endpoint : ImmutableList.of("me", "peers", "ious")) {
+                    final List<Long> latencies = new ArrayList<>();
+                    for (int i = 0; i < requests / 10; i++) call(client, "GET", baseUrl + endpoint);
+                    for (int i = 0; i < requests; i++) latencies.add(call(client, "GET", baseUrl + endpoint));
+                    record("api." + endpoint, latencies);
+                }
+            } catch (Exception e) {
+                throw new RuntimeException("Caught exception during API workload", e);
+            }
+            return null;
+        });
+    }
+
+    // Makes one call and returns its latency in microseconds.
+    private static long call(OkHttpClient client, String method, String url) throws IOException {
+        final Request request = new Request.Builder()
+                .url(url)
+                .method(method, method.equals("PUT") ? RequestBody.create(null, new byte[0]) : null)
+                .build();
+        final long start = System.nanoTime();
+        try (Response response = client.newCall(request).execute()) {
+            response.body().bytes();
+            assertTrue(method + " " + url + " returned " + response.code(), response.isSuccessful());
+        }
+        return (System.nanoTime() - start) / 1000;
+    }
+
+    private void record(String name, List<Long> micros) {
+        assertFalse(micros.isEmpty());
+        final List<Long> sorted = new ArrayList<>(micros);
+        Collections.sort(sorted);
+        results.setProperty(name + ".p50Millis", String.valueOf(sorted.get(sorted.size() / 2) / 1000.0));
+        results.setProperty(name + ".p99Millis", String.valueOf(sorted.get(Math.min(sorted.size() - 1, sorted.size() * 99 / 100)) / 1000.0));
+    }
+}